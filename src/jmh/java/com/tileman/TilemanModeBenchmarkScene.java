@@ -0,0 +1,233 @@
+package com.tileman;
+
+import com.google.gson.Gson;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import net.runelite.api.Client;
+import net.runelite.api.Player;
+import net.runelite.api.Point;
+import net.runelite.api.RenderOverview;
+import net.runelite.api.coords.LocalPoint;
+import net.runelite.api.widgets.Widget;
+import net.runelite.api.widgets.WidgetInfo;
+import net.runelite.client.config.ConfigManager;
+import net.runelite.client.ui.ClientToolbar;
+import net.runelite.client.ui.overlay.OverlayManager;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * A logged in plugin with a synthetic set of unlocked tiles, shared by the benchmarks.
+ *
+ * The tiles come from a seeded random walk around Lumbridge, kept to the 8x8 regions around it, so they cluster
+ * like a real account's would. The scene is loaded in the middle of them with the player standing at its centre,
+ * the camera looking straight down and the world map open over the same area.
+ * The client and configs are stub-only mocks; they add a little dispatch cost to every call but no work.
+ */
+@State(Scope.Benchmark)
+public class TilemanModeBenchmarkScene
+{
+	static final int MIN_REGION = 48;
+	static final int MAX_REGION = 56;
+	static final int BASE_X = 50 * 64 + 40;
+	static final int BASE_Y = 50 * 64 + 40;
+	static final int PLAYER_SCENE_X = 52;
+	static final int PLAYER_SCENE_Y = 52;
+	static final int CANVAS_WIDTH = 765;
+	static final int CANVAS_HEIGHT = 503;
+
+	private static final long SEED = 0x7113_3A4EL;
+	private static final Gson GSON = new Gson();
+
+	@Param({"1000", "10000", "100000"})
+	int tileCount;
+
+	Client client;
+	ConfigManager configManager;
+	TilemanModePlugin plugin;
+	Injector injector;
+
+	// Every unlocked tile by region, plus the same regions in the binary and legacy JSON config formats
+	final Map<Integer, TilemanModeRegion> regions = new HashMap<>();
+	final Map<Integer, String> encodedRegions = new HashMap<>();
+	final Map<Integer, String> jsonRegions = new HashMap<>();
+
+	// Camera read by the client mock, so benchmarks can move it between frames
+	int cameraX = LocalPoint.fromScene(PLAYER_SCENE_X, PLAYER_SCENE_Y).getX();
+	int cameraY = LocalPoint.fromScene(PLAYER_SCENE_X, PLAYER_SCENE_Y).getY();
+	int mapAngle;
+
+	@Setup
+	public void setUp()
+	{
+		generateTiles();
+		mockClient();
+		mockConfig();
+
+		plugin = new TilemanModePlugin();
+		injector = Guice.createInjector(new AbstractModule()
+		{
+			@Override
+			protected void configure()
+			{
+				bind(Client.class).toInstance(client);
+				bind(ConfigManager.class).toInstance(configManager);
+				bind(TilemanModeConfig.class).toInstance(mockTilemanConfig());
+				bind(OverlayManager.class).toInstance(mock(OverlayManager.class, withSettings().stubOnly()));
+				bind(ClientToolbar.class).toInstance(mock(ClientToolbar.class, withSettings().stubOnly()));
+				bind(TilemanModePlugin.class).toInstance(plugin);
+			}
+		});
+
+		// The same state startUp leaves behind, without the UI
+		for (TilemanModeRegion region : regions.values())
+		{
+			plugin.getTileStore().addTiles(region.getRegionId(), region.getTiles());
+		}
+		plugin.updateTileCounter();
+		// The worker isn't started, so build the scene grid here rather than through it
+		plugin.getSceneGrid().copyFrom(buildSceneGrid());
+	}
+
+	TilemanModeSceneGrid buildSceneGrid()
+	{
+		return plugin.buildSceneGrid(client.getMapRegions(), BASE_X, BASE_Y);
+	}
+
+	private void generateTiles()
+	{
+		final Random random = new Random(SEED);
+		final int min = MIN_REGION * 64;
+		final int max = MAX_REGION * 64 - 1;
+		int x = BASE_X + PLAYER_SCENE_X;
+		int y = BASE_Y + PLAYER_SCENE_Y;
+		int unlocked = 0;
+		while (unlocked < tileCount)
+		{
+			final TilemanModeRegion region = regions.computeIfAbsent((x >> 6) << 8 | (y >> 6), TilemanModeRegion::new);
+			if (region.add(x & 63, y & 63, 0))
+			{
+				unlocked++;
+			}
+
+			x = Math.max(min, Math.min(max, x + random.nextInt(3) - 1));
+			y = Math.max(min, Math.min(max, y + random.nextInt(3) - 1));
+		}
+
+		for (TilemanModeRegion region : regions.values())
+		{
+			encodedRegions.put(region.getRegionId(), TilemanModeRegionCodec.encode(region));
+			jsonRegions.put(region.getRegionId(), GSON.toJson(region.getTiles()));
+		}
+	}
+
+	private void mockClient()
+	{
+		client = mock(Client.class, withSettings().stubOnly());
+		when(client.getBaseX()).thenReturn(BASE_X);
+		when(client.getBaseY()).thenReturn(BASE_Y);
+		when(client.getPlane()).thenReturn(0);
+		when(client.getMapRegions()).thenReturn(getMapRegions());
+		when(client.getOverallExperience()).thenReturn(25_000_000L);
+		when(client.getTotalLevel()).thenReturn(1500);
+
+		final Player player = mock(Player.class, withSettings().stubOnly());
+		when(player.getLocalLocation()).thenReturn(LocalPoint.fromScene(PLAYER_SCENE_X, PLAYER_SCENE_Y));
+		when(client.getLocalPlayer()).thenReturn(player);
+
+		// Flat terrain and a camera straight above the player
+		when(client.getTileHeights()).thenReturn(new int[4][TilemanModeSceneGrid.SCENE_SIZE + 1][TilemanModeSceneGrid.SCENE_SIZE + 1]);
+		when(client.getTileSettings()).thenReturn(new byte[4][TilemanModeSceneGrid.SCENE_SIZE][TilemanModeSceneGrid.SCENE_SIZE]);
+		when(client.getCameraX()).thenAnswer(invocation -> cameraX);
+		when(client.getCameraY()).thenAnswer(invocation -> cameraY);
+		when(client.getCameraZ()).thenReturn(-3000);
+		when(client.getCameraPitch()).thenReturn(512);
+		when(client.getCameraYaw()).thenReturn(0);
+		when(client.getScale()).thenReturn(256);
+		when(client.getViewportWidth()).thenReturn(CANVAS_WIDTH);
+		when(client.getViewportHeight()).thenReturn(CANVAS_HEIGHT);
+		when(client.getCanvasWidth()).thenReturn(CANVAS_WIDTH);
+		when(client.getCanvasHeight()).thenReturn(CANVAS_HEIGHT);
+
+		// Fixed mode minimap, and the world map zoomed in on the player's region
+		final Widget widget = mock(Widget.class, withSettings().stubOnly());
+		when(widget.getCanvasLocation()).thenReturn(new Point(550, 10));
+		when(widget.getWidth()).thenReturn(146);
+		when(widget.getHeight()).thenReturn(151);
+		when(widget.getBounds()).thenReturn(new Rectangle(0, 0, CANVAS_WIDTH, CANVAS_HEIGHT));
+		when(client.getWidget(any(WidgetInfo.class))).thenReturn(widget);
+		when(client.getMinimapZoom()).thenReturn(4.0);
+		when(client.getMapAngle()).thenAnswer(invocation -> mapAngle);
+
+		final RenderOverview renderOverview = mock(RenderOverview.class, withSettings().stubOnly());
+		when(renderOverview.getWorldMapZoom()).thenReturn(4.0f);
+		when(renderOverview.getWorldMapPosition()).thenReturn(new Point(BASE_X + PLAYER_SCENE_X, BASE_Y + PLAYER_SCENE_Y));
+		when(client.getRenderOverview()).thenReturn(renderOverview);
+	}
+
+	private void mockConfig()
+	{
+		// The Ground Marker plugin's regions, for importing
+		final List<String> keys = new ArrayList<>();
+		configManager = mock(ConfigManager.class, withSettings().stubOnly());
+		for (Map.Entry<Integer, String> entry : jsonRegions.entrySet())
+		{
+			final String key = TilemanModeTileStore.REGION_PREFIX + entry.getKey();
+			keys.add("groundMarker." + key);
+			when(configManager.getConfiguration("groundMarker", key)).thenReturn(entry.getValue());
+		}
+		when(configManager.getConfigurationKeys(anyString())).thenReturn(new ArrayList<>());
+		when(configManager.getConfigurationKeys(eq("groundMarker.region"))).thenReturn(keys);
+	}
+
+	private static TilemanModeConfig mockTilemanConfig()
+	{
+		final TilemanModeConfig config = mock(TilemanModeConfig.class, withSettings().stubOnly());
+		when(config.gameMode()).thenReturn(TilemanModeConfig.TilemanGameMode.COMMUNITY);
+		when(config.expPerTile()).thenReturn(1000);
+		when(config.automarkTiles()).thenReturn(true);
+		when(config.allowTileDeficit()).thenReturn(true);
+		when(config.drawTilesOnMinimap()).thenReturn(true);
+		when(config.drawTilesOnWorldMap()).thenReturn(true);
+		when(config.fillOutline()).thenReturn(true);
+		when(config.renderMode()).thenReturn(TilemanModeConfig.TilemanRenderMode.TILES);
+		when(config.markerColor()).thenReturn(Color.YELLOW);
+		return config;
+	}
+
+	private static int[] getMapRegions()
+	{
+		final int minX = BASE_X >> 6;
+		final int minY = BASE_Y >> 6;
+		final int maxX = (BASE_X + TilemanModeSceneGrid.SCENE_SIZE - 1) >> 6;
+		final int maxY = (BASE_Y + TilemanModeSceneGrid.SCENE_SIZE - 1) >> 6;
+		final int[] mapRegions = new int[(maxX - minX + 1) * (maxY - minY + 1)];
+		int i = 0;
+		for (int x = minX; x <= maxX; x++)
+		{
+			for (int y = minY; y <= maxY; y++)
+			{
+				mapRegions[i++] = x << 8 | y;
+			}
+		}
+		return mapRegions;
+	}
+}
@@ -0,0 +1,146 @@
+package com.tileman;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * Benchmarks for drawing one frame of each overlay onto an offscreen image the size of the fixed mode client.
+ * Each overlay is measured both with nothing changing between frames and with the view changing every frame, so
+ * that nothing cached in the previous frame can be reused.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TilemanModeOverlayBenchmark
+{
+	@Benchmark
+	public Dimension renderOverlay(TilemanModeBenchmarkScene scene, Canvas canvas, SceneOverlay sceneOverlay)
+	{
+		if (sceneOverlay.viewChanging)
+		{
+			// Sway the camera back and forth, as when it is being dragged
+			scene.cameraX ^= 1;
+		}
+		return sceneOverlay.overlay.render(canvas.graphics);
+	}
+
+	@Benchmark
+	public Dimension renderMinimapOverlay(TilemanModeBenchmarkScene scene, Canvas canvas, MinimapOverlay minimapOverlay)
+	{
+		if (minimapOverlay.viewChanging)
+		{
+			// The minimap turns with the camera
+			scene.mapAngle ^= 1;
+		}
+		return minimapOverlay.overlay.render(canvas.graphics);
+	}
+
+	@Benchmark
+	public Dimension renderWorldMapOverlay(Canvas canvas, WorldMapOverlay worldMapOverlay)
+	{
+		return worldMapOverlay.overlay.render(canvas.graphics);
+	}
+
+	@State(Scope.Thread)
+	public static class Canvas
+	{
+		private BufferedImage image;
+		private Graphics2D graphics;
+
+		@Setup
+		public void setUp()
+		{
+			image = new BufferedImage(TilemanModeBenchmarkScene.CANVAS_WIDTH, TilemanModeBenchmarkScene.CANVAS_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+			graphics = image.createGraphics();
+		}
+
+		@TearDown
+		public void tearDown()
+		{
+			graphics.dispose();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class SceneOverlay
+	{
+		@Param({"false", "true"})
+		boolean viewChanging;
+
+		@Param({"TILES", "OUTLINE"})
+		TilemanModeConfig.TilemanRenderMode renderMode;
+
+		private TilemanModeOverlay overlay;
+
+		@Setup
+		public void setUp(TilemanModeBenchmarkScene scene)
+		{
+			when(scene.injector.getInstance(TilemanModeConfig.class).renderMode()).thenReturn(renderMode);
+			overlay = scene.injector.getInstance(TilemanModeOverlay.class);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class MinimapOverlay
+	{
+		@Param({"false", "true"})
+		boolean viewChanging;
+
+		private TilemanModeMinimapOverlay overlay;
+
+		@Setup
+		public void setUp(TilemanModeBenchmarkScene scene)
+		{
+			overlay = scene.injector.getInstance(TilemanModeMinimapOverlay.class);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class WorldMapOverlay
+	{
+		private TilemanModeWorldMapOverlay overlay;
+		private TilemanModeWorker worker;
+
+		@Setup
+		public void setUp(TilemanModeBenchmarkScene scene, Canvas canvas)
+		{
+			// Region images are rendered on the worker, so run it on this thread to have them ready before measuring
+			worker = scene.injector.getInstance(TilemanModeWorker.class);
+			worker.start(MoreExecutors.newDirectExecutorService());
+			overlay = scene.injector.getInstance(TilemanModeWorldMapOverlay.class);
+			// The first frame asks for the images and the second picks them up
+			overlay.render(canvas.graphics);
+			overlay.render(canvas.graphics);
+			if (overlay.countCachedImages() == 0)
+			{
+				throw new IllegalStateException("No world map images were rendered");
+			}
+		}
+
+		@TearDown
+		public void tearDown()
+		{
+			worker.stop();
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package com.tileman;
+
+import net.runelite.api.coords.LocalPoint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for reading, marking, counting and importing tiles.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TilemanModeTileBenchmark
+{
+	/**
+	 * Decodes every region from the config format they are saved in, as {@link TilemanModeTileStore#load()} does.
+	 */
+	@Benchmark
+	public void decodeRegions(TilemanModeBenchmarkScene scene, Blackhole blackhole)
+	{
+		for (Map.Entry<Integer, String> entry : scene.encodedRegions.entrySet())
+		{
+			blackhole.consume(TilemanModeRegionCodec.decode(entry.getKey(), entry.getValue()));
+		}
+	}
+
+	/**
+	 * Decodes every region from the JSON format they were saved in before, as still used by Ground Markers.
+	 */
+	@Benchmark
+	public void decodeLegacyRegions(TilemanModeBenchmarkScene scene, Blackhole blackhole)
+	{
+		for (Map.Entry<Integer, String> entry : scene.jsonRegions.entrySet())
+		{
+			blackhole.consume(TilemanModeRegionCodec.decode(entry.getKey(), entry.getValue()));
+		}
+	}
+
+	/**
+	 * Marks and then unmarks a tile next to the player, leaving the tiles as they were.
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public void updateTileMark(TilemanModeBenchmarkScene scene)
+	{
+		final LocalPoint localPoint = LocalPoint.fromScene(TilemanModeBenchmarkScene.PLAYER_SCENE_X + 1, TilemanModeBenchmarkScene.PLAYER_SCENE_Y);
+		scene.plugin.updateTileMark(localPoint, true);
+		scene.plugin.updateTileMark(localPoint, false);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public int updateTileCounter(TilemanModeBenchmarkScene scene)
+	{
+		scene.plugin.updateTileCounter();
+		return scene.plugin.getRemainingTiles();
+	}
+
+	/**
+	 * Rebuilds the scene's tiles, as the background worker does on every scene load.
+	 */
+	@Benchmark
+	public TilemanModeSceneGrid buildSceneGrid(TilemanModeBenchmarkScene scene)
+	{
+		return scene.buildSceneGrid();
+	}
+
+	/**
+	 * Imports every tile from Ground Markers into an empty tile set, then rebuilds the scene as the import does
+	 * once it finishes. The flush that writes the merged regions is left out, as the config is a mock here.
+	 */
+	@Benchmark
+	public int importGroundMarkerTiles(TilemanModeBenchmarkScene scene, EmptyTiles emptyTiles, Blackhole blackhole)
+	{
+		final int imported = scene.plugin.importGroundMarkerRegions(emptyTiles);
+		blackhole.consume(scene.buildSceneGrid());
+		return imported;
+	}
+
+	@State(Scope.Thread)
+	public static class EmptyTiles implements TilemanModePlugin.ImportListener
+	{
+		@Setup(Level.Invocation)
+		public void setUp(TilemanModeBenchmarkScene scene)
+		{
+			scene.plugin.getTileStore().clear();
+		}
+
+		@Override
+		public boolean isCancelled()
+		{
+			return false;
+		}
+
+		@Override
+		public void progress(int regionsImported, int regionCount)
+		{
+		}
+
+		@Override
+		public void finished(int tilesImported, boolean cancelled)
+		{
+		}
+	}
+}
@@ -42,10 +42,12 @@ class TileInfoOverlay extends OverlayPanel {
     private final Client client;
     private final TilemanModeConfig config;
     private final TilemanModePlugin plugin;
+    private final TilemanModeProfiler profiler;
 
     private final static String UNSPENT_TILES_STRING = "Available Tiles:";
     private final static String XP_UNTIL_NEXT_TILE = "XP Until Next Tile:";
     private final static String UNLOCKED_TILES = "Tiles Unlocked:";
+    private final static String LOADING = "Loading...";
     private final static String[] STRINGS = new String[] {
         UNSPENT_TILES_STRING,
         XP_UNTIL_NEXT_TILE,
@@ -53,11 +55,12 @@ class TileInfoOverlay extends OverlayPanel {
     };
 
     @Inject
-    private TileInfoOverlay(Client client, TilemanModeConfig config, TilemanModePlugin plugin) {
+    private TileInfoOverlay(Client client, TilemanModeConfig config, TilemanModePlugin plugin, TilemanModeProfiler profiler) {
         super(plugin);
         this.plugin = plugin;
         this.client = client;
         this.config = config;
+        this.profiler = profiler;
         setPosition(OverlayPosition.TOP_LEFT);
         setPriority(OverlayPriority.MED);
         getMenuEntries().add(new OverlayMenuEntry(RUNELITE_OVERLAY_CONFIG, OPTION_CONFIGURE, "Tileman Mode overlay"));
@@ -65,8 +68,19 @@ class TileInfoOverlay extends OverlayPanel {
 
     @Override
     public Dimension render(Graphics2D graphics) {
-        String unspentTiles = addCommasToNumber(plugin.getRemainingTiles());
-        String unlockedTiles = addCommasToNumber(plugin.getTotalTiles());
+        final long start = profiler.start(TilemanModeProfiler.Section.INFO_OVERLAY);
+        try {
+            return renderInfo(graphics);
+        } finally {
+            profiler.stop(TilemanModeProfiler.Section.INFO_OVERLAY, start);
+        }
+    }
+
+    private Dimension renderInfo(Graphics2D graphics) {
+        // The counts are only known once the tiles have been loaded in the background
+        boolean loading = plugin.isLoading();
+        String unspentTiles = loading ? LOADING : addCommasToNumber(plugin.getRemainingTiles());
+        String unlockedTiles = loading ? LOADING : addCommasToNumber(plugin.getTotalTiles());
         String xpUntilNextTile = addCommasToNumber(plugin.getXpUntilNextTile());
 
         panelComponent.getChildren().add(LineComponent.builder()
@@ -97,7 +111,7 @@ class TileInfoOverlay extends OverlayPanel {
     }
 
     private Color getTextColor() {
-        if(config.enableTileWarnings()) {
+        if(config.enableTileWarnings() && !plugin.isLoading()) {
             if (plugin.getRemainingTiles() <= 0) {
                 return Color.RED;
             } else if (plugin.getRemainingTiles() <= config.warningLimit()) {
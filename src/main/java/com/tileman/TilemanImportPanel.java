@@ -1,17 +1,30 @@
 package com.tileman;
 import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.RuneLite;
 import net.runelite.client.ui.ColorScheme;
 import net.runelite.client.ui.PluginPanel;
 
 import javax.inject.Singleton;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
+import java.io.File;
+import java.nio.file.Path;
 
 @Slf4j
 @Singleton
 public class TilemanImportPanel extends PluginPanel {
     private final TilemanModePlugin plugin;
+    private final JButton importButton = new JButton("Import");
+    private final JButton exportFileButton = new JButton("Export to file");
+    private final JButton importFileButton = new JButton("Import from file");
+    private final JProgressBar progressBar = new JProgressBar();
+    private final JLabel status = new JLabel();
+
+    // Only touched on the EDT, apart from cancelled which the import polls from the background executor
+    private boolean importing;
+    private volatile boolean cancelled;
 
     public TilemanImportPanel(TilemanModePlugin plugin) {
         this.plugin = plugin;
@@ -35,16 +48,38 @@ public class TilemanImportPanel extends PluginPanel {
 
         JLabel info = new JLabel(htmlLabel("Clicking the Import button below will migrate all tiles marked with the Ground Marker plugin into the Tileman Mode plugin. They will NOT be removed from the Ground Marker Plugin.", "#FFFFFF"));
 
-        JLabel warning = new JLabel(htmlLabel("WARNING: This directly modifies RuneLite's settings.properties file. You should make a back up before importing.", "#FFFF00"));
+        JLabel warning = new JLabel(htmlLabel("WARNING: This directly modifies RuneLite's settings.properties file. You should make a back up before importing, for example with the Export to file button.", "#FFFF00"));
+
+        JLabel backupInfo = new JLabel(htmlLabel("Export to file saves all your unlocked tiles to a backup file. Import from file adds the tiles in such a file to the ones you already have.", "#FFFFFF"));
 
         infoPanel.add(info);
         infoPanel.add(warning);
+        infoPanel.add(backupInfo);
 
         JPanel centerPanel = new JPanel(new BorderLayout());
         centerPanel.setBackground(ColorScheme.DARK_GRAY_COLOR);
-        JButton importButton = new JButton("Import");
-        centerPanel.add(importButton, BorderLayout.SOUTH);
-        importButton.addActionListener(l -> plugin.importGroundMarkerTiles());
+        JPanel progressPanel = new JPanel(new GridLayout(0, 1));
+        progressPanel.setBorder(new EmptyBorder(10, 0, 10, 0));
+        progressBar.setStringPainted(true);
+        progressBar.setVisible(false);
+        status.setForeground(Color.WHITE);
+        progressPanel.add(progressBar);
+        progressPanel.add(status);
+        centerPanel.add(progressPanel, BorderLayout.CENTER);
+        JPanel buttonPanel = new JPanel(new GridLayout(0, 1, 0, 5));
+        buttonPanel.add(importButton);
+        buttonPanel.add(exportFileButton);
+        buttonPanel.add(importFileButton);
+        centerPanel.add(buttonPanel, BorderLayout.SOUTH);
+        exportFileButton.addActionListener(l -> exportFile());
+        importFileButton.addActionListener(l -> importFile());
+        importButton.addActionListener(l -> {
+            if (importing) {
+                cancelImport();
+            } else {
+                startImport();
+            }
+        });
 
         GridBagConstraints constraints = new GridBagConstraints();
         constraints.fill = GridBagConstraints.HORIZONTAL;
@@ -59,6 +94,109 @@ public class TilemanImportPanel extends PluginPanel {
         add(centerPanel, BorderLayout.SOUTH);
     }
 
+    private void startImport() {
+        // The import would stop straight away, so say why instead
+        if (plugin.isLoading()) {
+            status.setText("Tiles are still loading, try again shortly");
+            return;
+        }
+
+        importing = true;
+        cancelled = false;
+        importButton.setText("Cancel");
+        importButton.setToolTipText("Stop importing after the current region");
+        progressBar.setValue(0);
+        progressBar.setVisible(true);
+        status.setText("Importing...");
+
+        plugin.importGroundMarkerTiles(new TilemanModePlugin.ImportListener() {
+            @Override
+            public boolean isCancelled() {
+                return cancelled;
+            }
+
+            @Override
+            public void progress(int regionsImported, int regionCount) {
+                SwingUtilities.invokeLater(() -> {
+                    progressBar.setMaximum(regionCount);
+                    progressBar.setValue(regionsImported);
+                    progressBar.setString(regionsImported + " / " + regionCount + " regions");
+                });
+            }
+
+            @Override
+            public void finished(int tilesImported, boolean cancelled) {
+                SwingUtilities.invokeLater(() -> finishImport(tilesImported, cancelled));
+            }
+        });
+    }
+
+    private void cancelImport() {
+        cancelled = true;
+        importButton.setEnabled(false);
+        status.setText("Cancelling...");
+    }
+
+    private void finishImport(int tilesImported, boolean cancelled) {
+        importing = false;
+        importButton.setText("Import");
+        importButton.setToolTipText("Import Ground Markers");
+        importButton.setEnabled(true);
+        progressBar.setVisible(false);
+        status.setText((cancelled ? "Cancelled after importing " : "Imported ") + tilesImported + " new tiles");
+    }
+
+    private void exportFile() {
+        if (plugin.isLoading()) {
+            status.setText("Tiles are still loading, try again shortly");
+            return;
+        }
+
+        JFileChooser fileChooser = createFileChooser();
+        fileChooser.setSelectedFile(new File(RuneLite.RUNELITE_DIR, "tileman." + TilemanModeTileFile.EXTENSION));
+        if (fileChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        Path path = fileChooser.getSelectedFile().toPath();
+        setFileButtonsEnabled(false);
+        status.setText("Exporting...");
+        plugin.exportTiles(path, (tiles, error) -> SwingUtilities.invokeLater(() -> {
+            setFileButtonsEnabled(true);
+            status.setText(error == null ? "Exported " + tiles + " tiles" : "Export failed: " + error.getMessage());
+        }));
+    }
+
+    private void importFile() {
+        if (plugin.isLoading()) {
+            status.setText("Tiles are still loading, try again shortly");
+            return;
+        }
+
+        JFileChooser fileChooser = createFileChooser();
+        if (fileChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        Path path = fileChooser.getSelectedFile().toPath();
+        setFileButtonsEnabled(false);
+        status.setText("Importing...");
+        plugin.importTiles(path, (tiles, error) -> SwingUtilities.invokeLater(() -> {
+            setFileButtonsEnabled(true);
+            status.setText(error == null ? "Imported " + tiles + " new tiles" : "Import failed: " + error.getMessage());
+        }));
+    }
+
+    private void setFileButtonsEnabled(boolean enabled) {
+        exportFileButton.setEnabled(enabled);
+        importFileButton.setEnabled(enabled);
+    }
+
+    private static JFileChooser createFileChooser() {
+        JFileChooser fileChooser = new JFileChooser(RuneLite.RUNELITE_DIR);
+        fileChooser.setFileFilter(new FileNameExtensionFilter("Tileman tiles", TilemanModeTileFile.EXTENSION));
+        return fileChooser;
+    }
 
     private static String htmlLabel(String key, String color)
     {
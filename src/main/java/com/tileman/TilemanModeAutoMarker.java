@@ -0,0 +1,141 @@
+package com.tileman;
+
+import net.runelite.api.Perspective;
+import net.runelite.api.coords.LocalPoint;
+
+/**
+ * Decides which tiles to mark when the player is seen on a new tile: the tile itself, plus whichever tiles they
+ * must have crossed since the last position seen. Works purely from local coordinates and a
+ * {@link TilemanModeCollisionMap}, so traces can be replayed through it without a client.
+ */
+class TilemanModeAutoMarker {
+    // Longest gap between two observed positions that is filled in, and the longest route considered for it
+    static final int MAX_GAP_DISTANCE = 16;
+    static final int MAX_GAP_PATH_LENGTH = 24;
+
+    interface TileMarker {
+        void markTile(LocalPoint localPoint);
+    }
+
+    private final TilemanModeCollisionMap collisionMap;
+    private final TilemanModePathfinder pathfinder = new TilemanModePathfinder();
+
+    TilemanModeAutoMarker(TilemanModeCollisionMap collisionMap) {
+        this.collisionMap = collisionMap;
+    }
+
+    /**
+     * @param lastTile the previous position seen, or null if there is none.
+     * @param lastPlane the plane of the previous position.
+     * @param currentPlayerPoint the position the player was just seen at.
+     * @param plane the current plane.
+     */
+    void walkedTo(LocalPoint lastTile, int lastPlane, LocalPoint currentPlayerPoint, int plane, TileMarker marker) {
+        // Mark the tile they walked to
+        marker.markTile(currentPlayerPoint);
+
+        // If player moves 2 tiles in a straight line, fill in the middle tile
+        if (lastTile == null || lastPlane != plane) {
+            return;
+        }
+
+        int xDiff = currentPlayerPoint.getX() - lastTile.getX();
+        int yDiff = currentPlayerPoint.getY() - lastTile.getY();
+        int yModifier = yDiff / 2;
+        int xModifier = xDiff / 2;
+
+        switch (lastTile.distanceTo(currentPlayerPoint)) {
+            case 0: // Haven't moved
+            case 128: // Moved 1 tile
+                return;
+            case 181: // Moved 1 tile diagonally
+                handleCornerMovement(lastTile, plane, xDiff, yDiff, marker);
+                break;
+            case 256: // Moved 2 tiles straight
+            case 362: // Moved 2 tiles diagonally
+                marker.markTile(new LocalPoint(lastTile.getX() + xModifier, lastTile.getY() + yModifier));
+                break;
+            case 286: // Moved in an 'L' shape
+                handleLMovement(lastTile, plane, xDiff, yDiff, marker);
+                break;
+            default: // Ticks were skipped, e.g. from lag, so rebuild the route walked in between
+                fillPath(lastTile, currentPlayerPoint, plane, marker);
+                break;
+        }
+    }
+
+    private void fillPath(LocalPoint lastTile, LocalPoint currentPlayerPoint, int plane, TileMarker marker) {
+        int startX = lastTile.getSceneX();
+        int startY = lastTile.getSceneY();
+        int endX = currentPlayerPoint.getSceneX();
+        int endY = currentPlayerPoint.getSceneY();
+        if (Math.max(Math.abs(endX - startX), Math.abs(endY - startY)) > MAX_GAP_DISTANCE) {
+            // Too far to have been walked, most likely a teleport
+            return;
+        }
+
+        int length = pathfinder.findPath(collisionMap, plane, startX, startY, endX, endY, MAX_GAP_PATH_LENGTH);
+        for (int step = 0; step < length; step++) {
+            marker.markTile(LocalPoint.fromScene(pathfinder.getPathX(step), pathfinder.getPathY(step)));
+        }
+    }
+
+    private void handleLMovement(LocalPoint lastTile, int plane, int xDiff, int yDiff, TileMarker marker) {
+        int xModifier = xDiff / 2;
+        int yModifier = yDiff / 2;
+        int tileBesideXDiff, tileBesideYDiff;
+
+        // Whichever direction has moved only one, keep it 0. This is the translation to the potential 'problem' gameObject
+        if (Math.abs(yDiff) == 128) {
+            tileBesideXDiff = xDiff;
+            tileBesideYDiff = 0;
+        } else {
+            tileBesideXDiff = 0;
+            tileBesideYDiff = yDiff;
+        }
+
+        int tileBesideFlags = getTileFlags(plane, lastTile.getX() + tileBesideXDiff, lastTile.getY() + tileBesideYDiff);
+
+        if (TilemanModeMovement.lFill(xDiff, yDiff, tileBesideFlags) == TilemanModeMovement.FILL_AROUND) {
+            // Interrupted
+            if (yModifier == 64) {
+                yModifier = 128;
+            } else if (xModifier == 64) {
+                xModifier = 128;
+            }
+            marker.markTile(new LocalPoint(lastTile.getX() + xModifier, lastTile.getY() + yModifier));
+        } else {
+            // Normal Pathing
+            marker.markTile(new LocalPoint(lastTile.getX() + tileBesideXDiff / 2, lastTile.getY() + tileBesideYDiff / 2));
+        }
+    }
+
+    private void handleCornerMovement(LocalPoint lastTile, int plane, int xDiff, int yDiff, TileMarker marker) {
+        int northX, northY, southX, southY;
+        if (yDiff > 0) {
+            northX = lastTile.getX();
+            northY = lastTile.getY() + yDiff;
+            southX = lastTile.getX() + xDiff;
+            southY = lastTile.getY();
+        } else {
+            northX = lastTile.getX() + xDiff;
+            northY = lastTile.getY();
+            southX = lastTile.getX();
+            southY = lastTile.getY() + yDiff;
+        }
+
+        int fill = TilemanModeMovement.cornerFill(xDiff, yDiff, getTileFlags(plane, northX, northY), getTileFlags(plane, southX, southY));
+        if (fill == TilemanModeMovement.FILL_SOUTH) {
+            marker.markTile(new LocalPoint(southX, southY));
+        } else if (fill == TilemanModeMovement.FILL_NORTH) {
+            marker.markTile(new LocalPoint(northX, northY));
+        }
+    }
+
+    /**
+     * @return the collision flags of the tile at the given local coordinates.
+     */
+    int getTileFlags(int plane, int localX, int localY) {
+        return collisionMap.getFlags(plane, localX >> Perspective.LOCAL_COORD_BITS, localY >> Perspective.LOCAL_COORD_BITS);
+    }
+}
@@ -0,0 +1,78 @@
+package com.tileman;
+
+import net.runelite.api.CollisionData;
+import net.runelite.api.Constants;
+
+import java.util.Arrays;
+
+/**
+ * The plugin's own copy of the scene collision flags, one flat array per plane.
+ * It is taken when a scene loads and refreshed per plane when objects that change collision spawn or despawn,
+ * so the marking code gets a plain O(1) lookup and can run against a snapshot without a live client.
+ */
+class TilemanModeCollisionMap {
+    static final int SCENE_SIZE = TilemanModeSceneGrid.SCENE_SIZE;
+
+    private final int[][] planes = new int[Constants.MAX_Z][SCENE_SIZE * SCENE_SIZE];
+    // Planes that changed since the last snapshot, one bit each
+    private int dirtyPlanes = (1 << Constants.MAX_Z) - 1;
+
+    /**
+     * @return the collision flags of the scene tile, or 0 if it is outside the scene.
+     */
+    int getFlags(int plane, int sceneX, int sceneY) {
+        if (plane < 0 || plane >= Constants.MAX_Z || sceneX < 0 || sceneX >= SCENE_SIZE || sceneY < 0 || sceneY >= SCENE_SIZE) {
+            return 0;
+        }
+        return planes[plane][sceneY * SCENE_SIZE + sceneX];
+    }
+
+    void setFlags(int plane, int sceneX, int sceneY, int flags) {
+        planes[plane][sceneY * SCENE_SIZE + sceneX] = flags;
+    }
+
+    void invalidate() {
+        dirtyPlanes = (1 << Constants.MAX_Z) - 1;
+    }
+
+    void invalidate(int plane) {
+        if (plane >= 0 && plane < Constants.MAX_Z) {
+            dirtyPlanes |= 1 << plane;
+        }
+    }
+
+    boolean isDirty() {
+        return dirtyPlanes != 0;
+    }
+
+    /**
+     * Copies the planes that changed since the last snapshot out of the client's collision maps.
+     */
+    void snapshot(CollisionData[] collisionMaps) {
+        if (dirtyPlanes == 0) {
+            return;
+        }
+
+        for (int plane = 0; plane < Constants.MAX_Z; plane++) {
+            if ((dirtyPlanes & (1 << plane)) == 0) {
+                continue;
+            }
+
+            int[] snapshot = planes[plane];
+            if (collisionMaps == null || plane >= collisionMaps.length || collisionMaps[plane] == null) {
+                Arrays.fill(snapshot, 0);
+                continue;
+            }
+
+            int[][] flags = collisionMaps[plane].getFlags();
+            int width = Math.min(flags.length, SCENE_SIZE);
+            for (int x = 0; x < width; x++) {
+                int height = Math.min(flags[x].length, SCENE_SIZE);
+                for (int y = 0; y < height; y++) {
+                    snapshot[y * SCENE_SIZE + x] = flags[x][y];
+                }
+            }
+        }
+        dirtyPlanes = 0;
+    }
+}
@@ -60,6 +60,11 @@ public interface TilemanModeConfig extends Config {
         ACCELERATED
     }
 
+    public enum TilemanRenderMode {
+        TILES,
+        OUTLINE
+    }
+
     @Alpha
     @ConfigItem(
             keyName = "gameMode",
@@ -153,6 +158,53 @@ public interface TilemanModeConfig extends Config {
         return Color.YELLOW;
     }
 
+    @ConfigItem(
+            keyName = "renderMode",
+            name = "Render Mode",
+            section = settingsSection,
+            description = "Draw every tile on its own, or merge unlocked areas into a single outline",
+            position = 7
+    )
+    default TilemanRenderMode renderMode() {
+        return TilemanRenderMode.TILES;
+    }
+
+    @ConfigItem(
+            keyName = "fillOutline",
+            name = "Fill outlined areas",
+            section = settingsSection,
+            description = "Fills unlocked areas with the tile color when using the outline render mode",
+            position = 8
+    )
+    default boolean fillOutline() {
+        return true;
+    }
+
+    @ConfigItem(
+            keyName = "showDiagnostics",
+            name = "Show diagnostics",
+            section = settingsSection,
+            description = "Times the plugin's hot paths and shows their latencies and allocations in an overlay",
+            position = 9
+    )
+    default boolean showDiagnostics() {
+        return false;
+    }
+
+    @Range(
+            min = 1
+    )
+    @ConfigItem(
+            keyName = "regionCacheSize",
+            name = "Region cache size (MB)",
+            section = settingsSection,
+            description = "Memory kept for decoded regions of unlocked tiles; the least recently used are decoded again when needed",
+            position = 10
+    )
+    default int regionCacheSize() {
+        return 8;
+    }
+
     /***   Custom Game Mode section   ***/
     @ConfigItem(
             keyName = "enableCustomGameMode",
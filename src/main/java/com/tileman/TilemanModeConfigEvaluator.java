@@ -122,4 +122,14 @@ class TilemanModeConfigEvaluator implements TilemanModeConfig {
     public boolean allowTileDeficit() {
         return config.allowTileDeficit();
     }
+
+    @Override
+    public boolean showDiagnostics() {
+        return config.showDiagnostics();
+    }
+
+    @Override
+    public int regionCacheSize() {
+        return config.regionCacheSize();
+    }
 }
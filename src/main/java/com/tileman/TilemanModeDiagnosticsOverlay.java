@@ -0,0 +1,83 @@
+package com.tileman;
+
+import net.runelite.client.ui.overlay.OverlayPanel;
+import net.runelite.client.ui.overlay.OverlayPosition;
+import net.runelite.client.ui.overlay.OverlayPriority;
+import net.runelite.client.ui.overlay.components.LineComponent;
+import net.runelite.client.ui.overlay.components.TitleComponent;
+import net.runelite.client.ui.overlay.components.table.TableAlignment;
+import net.runelite.client.ui.overlay.components.table.TableComponent;
+
+import javax.inject.Inject;
+import java.awt.*;
+
+/**
+ * Shows what {@link TilemanModeProfiler} recorded over its last window: per section the number of calls, the median,
+ * 99th percentile and slowest call in milliseconds, and the mean kilobytes allocated per call. Below that are the
+ * region cache's counters since the tiles were loaded.
+ */
+class TilemanModeDiagnosticsOverlay extends OverlayPanel {
+    private static final String[] HEADER = {"Section", "Calls", "p50", "p99", "Max", "KB"};
+
+    private final TilemanModeConfig config;
+    private final TilemanModePlugin plugin;
+    private final TilemanModeProfiler profiler;
+
+    @Inject
+    private TilemanModeDiagnosticsOverlay(TilemanModeConfig config, TilemanModePlugin plugin, TilemanModeProfiler profiler) {
+        super(plugin);
+        this.config = config;
+        this.plugin = plugin;
+        this.profiler = profiler;
+        setPosition(OverlayPosition.TOP_LEFT);
+        setPriority(OverlayPriority.LOW);
+    }
+
+    @Override
+    public Dimension render(Graphics2D graphics) {
+        if (!config.showDiagnostics()) {
+            return null;
+        }
+
+        panelComponent.getChildren().add(TitleComponent.builder()
+                .text("Tileman diagnostics (" + TilemanModeProfiler.WINDOW_SECONDS + "s)")
+                .build());
+
+        TableComponent table = new TableComponent();
+        table.setColumnAlignments(TableAlignment.LEFT, TableAlignment.RIGHT, TableAlignment.RIGHT,
+                TableAlignment.RIGHT, TableAlignment.RIGHT, TableAlignment.RIGHT);
+        table.addRow(HEADER);
+        for (TilemanModeProfiler.Section section : TilemanModeProfiler.Section.values()) {
+            TilemanModeProfiler.Stats stats = profiler.getStats(section);
+            table.addRow(
+                    section.getName(),
+                    Long.toString(stats.getCalls()),
+                    formatMillis(stats.getP50Nanos()),
+                    formatMillis(stats.getP99Nanos()),
+                    formatMillis(stats.getMaxNanos()),
+                    stats.getAllocatedBytes() < 0 ? "-" : String.format("%.1f", stats.getAllocatedBytes() / 1024.0));
+        }
+        panelComponent.getChildren().add(table);
+
+        TilemanModeTileStore.CacheStats cache = plugin.getTileStore().getCacheStats();
+        panelComponent.getChildren().add(LineComponent.builder()
+                .left("Regions cached")
+                .right(cache.getCachedRegions() + " / " + cache.getRegions())
+                .build());
+        panelComponent.getChildren().add(LineComponent.builder()
+                .left("Hits / misses")
+                .right(cache.getHits() + " / " + cache.getMisses())
+                .build());
+        panelComponent.getChildren().add(LineComponent.builder()
+                .left("Prefetched / evicted")
+                .right(cache.getPrefetches() + " / " + cache.getEvictions())
+                .build());
+        panelComponent.setPreferredSize(new Dimension(300, 0));
+
+        return super.render(graphics);
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.format("%.2f", nanos / 1_000_000.0);
+    }
+}
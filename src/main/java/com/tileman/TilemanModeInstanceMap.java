@@ -0,0 +1,144 @@
+package com.tileman;
+
+import lombok.Value;
+import net.runelite.api.coords.WorldPoint;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Where the 8x8 chunks of the map appear in a loaded instance, built once per scene from the client's instance
+ * template chunks.
+ *
+ * {@link WorldPoint#toLocalInstance} scans every template chunk of the scene for each point it translates. This
+ * inverts the templates instead, so the chunks a region is copied to are looked up once and its tiles are then moved
+ * a chunk at a time, giving the same scene tiles, rotation included.
+ */
+class TilemanModeInstanceMap {
+    static final int CHUNK_SIZE = 8;
+
+    private static final int CHUNKS_PER_REGION = TilemanModeRegion.REGION_SIZE / CHUNK_SIZE;
+    private static final int EMPTY_CHUNK = -1;
+
+    // Placements of the chunks of each template region, keyed by regionId << 2 | scene plane. Like
+    // WorldPoint.toLocalInstance, a tile is only looked up on the scene plane matching its own, whatever plane the
+    // template chunk was copied from
+    private final Map<Integer, List<Placement>> placements = new HashMap<>();
+    private final Set<Integer> regionIds = new LinkedHashSet<>();
+
+    /**
+     * @param templateChunks the client's instance template chunks, indexed by scene plane, chunk x and chunk y.
+     */
+    TilemanModeInstanceMap(int[][][] templateChunks) {
+        for (int scenePlane = 0; scenePlane < templateChunks.length; scenePlane++) {
+            for (int sceneChunkX = 0; sceneChunkX < templateChunks[scenePlane].length; sceneChunkX++) {
+                for (int sceneChunkY = 0; sceneChunkY < templateChunks[scenePlane][sceneChunkX].length; sceneChunkY++) {
+                    int chunkData = templateChunks[scenePlane][sceneChunkX][sceneChunkY];
+                    if (chunkData == EMPTY_CHUNK) {
+                        continue;
+                    }
+                    int rotation = chunkData >> 1 & 0x3;
+                    int templateY = (chunkData >> 3 & 0x7FF) * CHUNK_SIZE;
+                    int templateX = (chunkData >> 14 & 0x3FF) * CHUNK_SIZE;
+
+                    int regionId = (templateX >> 6) << 8 | templateY >> 6;
+                    regionIds.add(regionId);
+                    placements.computeIfAbsent(regionId << 2 | scenePlane, k -> new ArrayList<>()).add(new Placement(
+                            (templateX & (TilemanModeRegion.REGION_SIZE - 1)) / CHUNK_SIZE,
+                            (templateY & (TilemanModeRegion.REGION_SIZE - 1)) / CHUNK_SIZE,
+                            scenePlane, sceneChunkX * CHUNK_SIZE, sceneChunkY * CHUNK_SIZE, rotation));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the regions the instance copies any chunk of.
+     */
+    Collection<Integer> getRegionIds() {
+        return Collections.unmodifiableSet(regionIds);
+    }
+
+    /**
+     * Adds the tiles of one plane of a template region, one long per row of 64 tiles, wherever the instance copies them.
+     */
+    void addToGrid(int regionId, int plane, long[] rows, TilemanModeSceneGrid grid) {
+        List<Placement> chunks = placements.get(regionId << 2 | plane);
+        if (chunks == null) {
+            return;
+        }
+        for (Placement chunk : chunks) {
+            int shift = chunk.getRegionChunkX() * CHUNK_SIZE;
+            for (int y = 0; y < CHUNK_SIZE; y++) {
+                for (int row = (int) (rows[chunk.getRegionChunkY() * CHUNK_SIZE + y] >>> shift) & 0xFF; row != 0; row &= row - 1) {
+                    int x = Integer.numberOfTrailingZeros(row);
+                    grid.add(chunk.getScenePlane(), chunk.sceneX(x, y), chunk.sceneY(x, y));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return every place the instance copies the tile to, in world coordinates of the scene.
+     */
+    List<WorldPoint> toScene(TilemanModeTile tile, int baseX, int baseY) {
+        List<Placement> chunks = placements.get(tile.getRegionId() << 2 | tile.getZ());
+        if (chunks == null) {
+            return Collections.emptyList();
+        }
+        int regionChunkX = tile.getRegionX() / CHUNK_SIZE;
+        int regionChunkY = tile.getRegionY() / CHUNK_SIZE;
+        int x = tile.getRegionX() & (CHUNK_SIZE - 1);
+        int y = tile.getRegionY() & (CHUNK_SIZE - 1);
+        List<WorldPoint> points = new ArrayList<>(1);
+        for (Placement chunk : chunks) {
+            if (chunk.getRegionChunkX() == regionChunkX && chunk.getRegionChunkY() == regionChunkY) {
+                points.add(new WorldPoint(baseX + chunk.sceneX(x, y), baseY + chunk.sceneY(x, y), chunk.getScenePlane()));
+            }
+        }
+        return points;
+    }
+
+    @Value
+    private static class Placement {
+        int regionChunkX;
+        int regionChunkY;
+        int scenePlane;
+        int sceneChunkX;
+        int sceneChunkY;
+        int rotation;
+
+        // Rotated the same way as WorldPoint.toLocalInstance, clockwise a quarter turn per step
+        int sceneX(int x, int y) {
+            switch (rotation) {
+                case 1:
+                    return sceneChunkX + y;
+                case 2:
+                    return sceneChunkX + CHUNK_SIZE - 1 - x;
+                case 3:
+                    return sceneChunkX + CHUNK_SIZE - 1 - y;
+                default:
+                    return sceneChunkX + x;
+            }
+        }
+
+        int sceneY(int x, int y) {
+            switch (rotation) {
+                case 1:
+                    return sceneChunkY + CHUNK_SIZE - 1 - x;
+                case 2:
+                    return sceneChunkY + CHUNK_SIZE - 1 - y;
+                case 3:
+                    return sceneChunkY + x;
+                default:
+                    return sceneChunkY + y;
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.tileman;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.IntConsumer;
+
+/**
+ * Append-only log of every tile marked or unmarked since the tile store was last flushed to the config.
+ *
+ * Each change is a single packed int, so marking a tile writes 4 bytes rather than a whole region. On startup the
+ * journal is replayed over the regions loaded from the config, which recovers changes a crash or a failed region
+ * write would otherwise lose: the last record for a tile is always its latest state. Once the config holding the
+ * flushed regions is saved, the records they cover are dropped again by {@link #compact(long)}.
+ *
+ * The most recent changes are also kept in memory, so they can be undone one at a time.
+ */
+@Slf4j
+class TilemanModeJournal implements Closeable {
+    static final int NONE = -1;
+
+    private static final int MAGIC = 0x544D4A4C; // TMJL
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int RECORD_SIZE = Integer.BYTES;
+    private static final int MAX_UNDO = 256;
+
+    private final Path path;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    private final Deque<Integer> undoHistory = new ArrayDeque<>();
+    private FileChannel channel;
+    private long size;
+
+    private TilemanModeJournal(Path path, FileChannel channel, long size) {
+        this.path = path;
+        this.channel = channel;
+        this.size = size;
+    }
+
+    /**
+     * Opens the journal at {@code path}, creating it if it doesn't exist yet. A journal that isn't one, or is of
+     * another version, is moved aside and a new one started.
+     */
+    static TilemanModeJournal open(Path path) throws IOException {
+        Files.createDirectories(path.getParent());
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = channel.size();
+            if (size >= HEADER_SIZE) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                readFully(channel, header, 0);
+                if (header.getInt(0) == MAGIC && header.getInt(Integer.BYTES) == VERSION) {
+                    // Drop a record torn by a crash mid-append
+                    long whole = HEADER_SIZE + (size - HEADER_SIZE) / RECORD_SIZE * RECORD_SIZE;
+                    if (whole != size) {
+                        channel.truncate(whole);
+                    }
+                    return new TilemanModeJournal(path, channel, whole);
+                }
+            }
+            if (size > 0) {
+                log.warn("Moving aside unreadable tile journal {}", path);
+                channel.close();
+                Files.move(path, path.resolveSibling(path.getFileName() + ".bad"), StandardCopyOption.REPLACE_EXISTING);
+                channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            writeHeader(channel);
+            return new TilemanModeJournal(path, channel, HEADER_SIZE);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    static int pack(TilemanModeTile tile, boolean marked) {
+        return tile.getRegionId() << 15 | tile.getZ() << 13 | tile.getRegionY() << 7 | tile.getRegionX() << 1 | (marked ? 1 : 0);
+    }
+
+    static TilemanModeTile unpackTile(int record) {
+        return new TilemanModeTile(record >>> 15, record >> 1 & 0x3F, record >> 7 & 0x3F, record >> 13 & 0x3);
+    }
+
+    static boolean isMarked(int record) {
+        return (record & 1) != 0;
+    }
+
+    /**
+     * Appends a change. The record reaches the OS straight away, so it survives the client crashing, but it is
+     * not forced to disk.
+     * @param undoable whether the change can be undone; false for the changes that undo others.
+     */
+    synchronized void append(int change, boolean undoable) throws IOException {
+        record.clear();
+        record.putInt(change);
+        record.flip();
+        while (record.hasRemaining()) {
+            channel.write(record, size + record.position());
+        }
+        size += RECORD_SIZE;
+
+        if (undoable) {
+            if (undoHistory.size() == MAX_UNDO) {
+                undoHistory.removeLast();
+            }
+            undoHistory.push(change);
+        }
+    }
+
+    /**
+     * Passes every record to {@code replay}, oldest first.
+     */
+    synchronized void replay(IntConsumer replay) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long position = HEADER_SIZE;
+        while (position < size) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), size - position));
+            readFully(channel, buffer, position);
+            position += buffer.limit();
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                replay.accept(buffer.getInt());
+            }
+        }
+    }
+
+    /**
+     * @return the position just past the latest record, to pass to {@link #compact(long)} once everything up to
+     * here has been written elsewhere.
+     */
+    synchronized long position() {
+        return size;
+    }
+
+    /**
+     * Drops every record before {@code position}. Records appended after it are moved to the front of a new
+     * journal, which then replaces this one, so a crash mid-compaction leaves either journal intact.
+     */
+    synchronized void compact(long position) throws IOException {
+        if (position <= HEADER_SIZE) {
+            return;
+        }
+        if (position >= size) {
+            channel.truncate(HEADER_SIZE);
+            size = HEADER_SIZE;
+            return;
+        }
+
+        ByteBuffer tail = ByteBuffer.allocate((int) (size - position));
+        readFully(channel, tail, position);
+        tail.flip();
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel compacted = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader(compacted);
+            while (tail.hasRemaining()) {
+                compacted.write(tail, HEADER_SIZE + tail.position());
+            }
+            compacted.force(false);
+        }
+        channel.close();
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        size = channel.size();
+    }
+
+    /**
+     * @return the most recent change that hasn't been undone yet, removing it from the history, or {@link #NONE}.
+     */
+    synchronized int popUndo() {
+        Integer change = undoHistory.poll();
+        return change == null ? NONE : change;
+    }
+
+    synchronized boolean canUndo() {
+        return !undoHistory.isEmpty();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.flip();
+        channel.truncate(0);
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Tile journal is truncated");
+            }
+        }
+    }
+}
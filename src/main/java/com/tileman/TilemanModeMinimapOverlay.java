@@ -28,13 +28,17 @@ package com.tileman;
 import net.runelite.api.Client;
 import net.runelite.api.Perspective;
 import net.runelite.api.Point;
+import net.runelite.api.Varbits;
 import net.runelite.api.coords.LocalPoint;
-import net.runelite.api.coords.WorldPoint;
+import net.runelite.api.widgets.Widget;
+import net.runelite.api.widgets.WidgetInfo;
 import net.runelite.client.ui.overlay.*;
 
 import javax.inject.Inject;
 import java.awt.*;
-import java.util.Collection;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.util.Objects;
 
 class TilemanModeMinimapOverlay extends Overlay
 {
@@ -45,13 +49,27 @@ class TilemanModeMinimapOverlay extends Overlay
 	private final Client client;
 	private final TilemanModeConfig config;
 	private final TilemanModePlugin plugin;
+	private final TilemanModeProfiler profiler;
+
+	// Every tile in range merged into one shape, rebuilt only when something it was projected from changes
+	private Path2D layer;
+	private int layerGridVersion = -1;
+	private int layerPlane = -1;
+	private int layerPlayerX = -1;
+	private int layerPlayerY = -1;
+	private int layerMapAngle = -1;
+	private double layerZoom = -1;
+	private int layerCanvasWidth = -1;
+	private int layerCanvasHeight = -1;
+	private Rectangle layerMinimapBounds;
 
 	@Inject
-	private TilemanModeMinimapOverlay(Client client, TilemanModeConfig config, TilemanModePlugin plugin)
+	private TilemanModeMinimapOverlay(Client client, TilemanModeConfig config, TilemanModePlugin plugin, TilemanModeProfiler profiler)
 	{
 		this.client = client;
 		this.config = config;
 		this.plugin = plugin;
+		this.profiler = profiler;
 		setPosition(OverlayPosition.DYNAMIC);
 		setPriority(OverlayPriority.LOW);
 		setLayer(OverlayLayer.ABOVE_WIDGETS);
@@ -65,43 +83,108 @@ class TilemanModeMinimapOverlay extends Overlay
 			return null;
 		}
 
-		final Collection<WorldPoint> points = plugin.getPoints();
-		for (final WorldPoint point : points)
+		final long start = profiler.start(TilemanModeProfiler.Section.MINIMAP_OVERLAY);
+		try
 		{
-			WorldPoint worldPoint = point;
-			if (worldPoint.getPlane() != client.getPlane())
-			{
-				continue;
-			}
-
-			drawOnMinimap(graphics, worldPoint);
+			drawTiles(graphics);
+		}
+		finally
+		{
+			profiler.stop(TilemanModeProfiler.Section.MINIMAP_OVERLAY, start);
 		}
-
 		return null;
 	}
 
-	private void drawOnMinimap(Graphics2D graphics, WorldPoint point)
+	private void drawTiles(Graphics2D graphics)
 	{
-		WorldPoint playerLocation = client.getLocalPlayer().getWorldLocation();
-
-		if (point.distanceTo(playerLocation) >= MAX_DRAW_DISTANCE)
+		final LocalPoint playerLocation = client.getLocalPlayer().getLocalLocation();
+		if (playerLocation == null)
 		{
 			return;
 		}
 
-		LocalPoint lp = LocalPoint.fromWorld(client, point);
-		if (lp == null)
+		final TilemanModeSceneGrid sceneGrid = plugin.getSceneGrid();
+		final int plane = client.getPlane();
+		final Rectangle minimapBounds = getMinimapBounds();
+		if (layer == null
+			|| layerGridVersion != sceneGrid.getVersion()
+			|| layerPlane != plane
+			|| layerPlayerX != playerLocation.getX()
+			|| layerPlayerY != playerLocation.getY()
+			|| layerMapAngle != client.getMapAngle()
+			|| layerZoom != client.getMinimapZoom()
+			|| layerCanvasWidth != client.getCanvasWidth()
+			|| layerCanvasHeight != client.getCanvasHeight()
+			|| !Objects.equals(layerMinimapBounds, minimapBounds))
 		{
-			return;
+			layer = buildLayer(sceneGrid, plane, playerLocation);
+			layerGridVersion = sceneGrid.getVersion();
+			layerPlane = plane;
+			layerPlayerX = playerLocation.getX();
+			layerPlayerY = playerLocation.getY();
+			layerMapAngle = client.getMapAngle();
+			layerZoom = client.getMinimapZoom();
+			layerCanvasWidth = client.getCanvasWidth();
+			layerCanvasHeight = client.getCanvasHeight();
+			layerMinimapBounds = minimapBounds;
 		}
 
-		Point posOnMinimap = Perspective.localToMinimap(client, lp);
-		if (posOnMinimap == null)
+		graphics.setColor(getTileColor());
+		graphics.draw(layer);
+	}
+
+	/**
+	 * @return the bounds of the minimap widget tiles are projected onto, the same one Perspective.localToMinimap
+	 * uses for the current layout, or null if it isn't loaded.
+	 */
+	private Rectangle getMinimapBounds()
+	{
+		final Widget minimap;
+		if (!client.isResized())
 		{
-			return;
+			minimap = client.getWidget(WidgetInfo.FIXED_VIEWPORT_MINIMAP_DRAW_AREA);
+		}
+		else if (client.getVar(Varbits.SIDE_PANELS) == 1)
+		{
+			minimap = client.getWidget(WidgetInfo.RESIZABLE_MINIMAP_DRAW_AREA);
+		}
+		else
+		{
+			minimap = client.getWidget(WidgetInfo.RESIZABLE_MINIMAP_STONES_DRAW_AREA);
+		}
+		return minimap == null ? null : minimap.getBounds();
+	}
+
+	private Path2D buildLayer(TilemanModeSceneGrid sceneGrid, int plane, LocalPoint playerLocation)
+	{
+		final Path2D path = new Path2D.Float();
+		final double angle = client.getMapAngle() * Perspective.UNIT;
+
+		// Only visit the tiles within draw distance of the player
+		final int playerX = playerLocation.getSceneX();
+		final int playerY = playerLocation.getSceneY();
+		for (int x = playerX - MAX_DRAW_DISTANCE + 1; x < playerX + MAX_DRAW_DISTANCE; x++)
+		{
+			for (int y = playerY - MAX_DRAW_DISTANCE + 1; y < playerY + MAX_DRAW_DISTANCE; y++)
+			{
+				if (!sceneGrid.contains(plane, x, y))
+				{
+					continue;
+				}
+
+				final Point posOnMinimap = Perspective.localToMinimap(client, LocalPoint.fromScene(x, y));
+				if (posOnMinimap == null)
+				{
+					continue;
+				}
+
+				// Same rect as OverlayUtil.renderMinimapRect, rotated with the minimap
+				final Rectangle rect = new Rectangle(posOnMinimap.getX() - TILE_WIDTH / 2, posOnMinimap.getY() - TILE_HEIGHT / 2, TILE_WIDTH - 1, TILE_HEIGHT - 1);
+				path.append(AffineTransform.getRotateInstance(angle, posOnMinimap.getX(), posOnMinimap.getY()).createTransformedShape(rect), false);
+			}
 		}
 
-		OverlayUtil.renderMinimapRect(client, graphics, posOnMinimap, TILE_WIDTH, TILE_HEIGHT, getTileColor());
+		return path;
 	}
 
 	private Color getTileColor() {
@@ -0,0 +1,87 @@
+package com.tileman;
+
+import net.runelite.api.CollisionDataFlag;
+
+/**
+ * Decisions for filling in the tile the player skipped over on a one tick diagonal or 'L' shaped move,
+ * evaluated directly on raw collision flags with precomputed masks so they allocate nothing.
+ */
+final class TilemanModeMovement {
+    static final int FULL_BLOCK = CollisionDataFlag.BLOCK_MOVEMENT_FLOOR
+            | CollisionDataFlag.BLOCK_MOVEMENT_FLOOR_DECORATION
+            | CollisionDataFlag.BLOCK_MOVEMENT_OBJECT
+            | CollisionDataFlag.BLOCK_MOVEMENT_FULL;
+
+    static final int ALL_DIRECTIONS = CollisionDataFlag.BLOCK_MOVEMENT_NORTH_WEST
+            | CollisionDataFlag.BLOCK_MOVEMENT_NORTH
+            | CollisionDataFlag.BLOCK_MOVEMENT_NORTH_EAST
+            | CollisionDataFlag.BLOCK_MOVEMENT_EAST
+            | CollisionDataFlag.BLOCK_MOVEMENT_SOUTH_EAST
+            | CollisionDataFlag.BLOCK_MOVEMENT_SOUTH
+            | CollisionDataFlag.BLOCK_MOVEMENT_SOUTH_WEST
+            | CollisionDataFlag.BLOCK_MOVEMENT_WEST;
+
+    // A corner tile can't be cut through if it is fully blocked, or walled on either side facing the move
+    private static final int NORTH_TILE_BLOCKS_NORTH_WEST = FULL_BLOCK | CollisionDataFlag.BLOCK_MOVEMENT_SOUTH | CollisionDataFlag.BLOCK_MOVEMENT_WEST;
+    private static final int SOUTH_TILE_BLOCKS_NORTH_WEST = FULL_BLOCK | CollisionDataFlag.BLOCK_MOVEMENT_NORTH | CollisionDataFlag.BLOCK_MOVEMENT_EAST;
+    private static final int NORTH_TILE_BLOCKS_NORTH_EAST = FULL_BLOCK | CollisionDataFlag.BLOCK_MOVEMENT_SOUTH | CollisionDataFlag.BLOCK_MOVEMENT_EAST;
+    private static final int SOUTH_TILE_BLOCKS_NORTH_EAST = FULL_BLOCK | CollisionDataFlag.BLOCK_MOVEMENT_NORTH | CollisionDataFlag.BLOCK_MOVEMENT_WEST;
+
+    static final int FILL_NONE = 0;
+    // Corner movement
+    static final int FILL_NORTH = 1;
+    static final int FILL_SOUTH = 2;
+    // 'L' movement
+    static final int FILL_BESIDE = 3;
+    static final int FILL_AROUND = 4;
+
+    private TilemanModeMovement() {
+    }
+
+    static boolean isFullyBlocked(int flags) {
+        return (flags & FULL_BLOCK) != 0;
+    }
+
+    /**
+     * Picks the tile the player must have cut through on a one tile diagonal move.
+     * @return {@link #FILL_NORTH}, {@link #FILL_SOUTH} or {@link #FILL_NONE} if either could have been skipped.
+     */
+    static int cornerFill(int xDiff, int yDiff, int northFlags, int southFlags) {
+        if (xDiff + yDiff == 0) {
+            // Diagonal tilts north west
+            if ((northFlags & NORTH_TILE_BLOCKS_NORTH_WEST) != 0) {
+                return FILL_SOUTH;
+            } else if ((southFlags & SOUTH_TILE_BLOCKS_NORTH_WEST) != 0) {
+                return FILL_NORTH;
+            }
+        } else {
+            // Diagonal tilts north east
+            if ((northFlags & NORTH_TILE_BLOCKS_NORTH_EAST) != 0) {
+                return FILL_SOUTH;
+            } else if ((southFlags & SOUTH_TILE_BLOCKS_NORTH_EAST) != 0) {
+                return FILL_NORTH;
+            }
+        }
+        return FILL_NONE;
+    }
+
+    /**
+     * Picks the middle tile of an 'L' shaped move, given the flags of the tile beside the start in the direction
+     * the player moved one tile.
+     * @return {@link #FILL_BESIDE} if the player went through that tile, or {@link #FILL_AROUND} if it blocked them
+     * and they went the other way.
+     */
+    static int lFill(int xDiff, int yDiff, int besideFlags) {
+        if ((besideFlags & (FULL_BLOCK | ALL_DIRECTIONS)) == 0) {
+            return FILL_BESIDE;
+        } else if ((besideFlags & FULL_BLOCK) != 0) {
+            return FILL_AROUND;
+        }
+
+        // Moving 2 North or 1 South checks the south wall, moving 2 South or 1 North the north wall
+        int direction1 = yDiff == 256 || yDiff == -128 ? CollisionDataFlag.BLOCK_MOVEMENT_SOUTH : CollisionDataFlag.BLOCK_MOVEMENT_NORTH;
+        // Moving 2 East or 1 West checks the west wall, moving 2 West or 1 East the east wall
+        int direction2 = xDiff == 256 || xDiff == -128 ? CollisionDataFlag.BLOCK_MOVEMENT_WEST : CollisionDataFlag.BLOCK_MOVEMENT_EAST;
+        return (besideFlags & (direction1 | direction2)) != 0 ? FILL_AROUND : FILL_BESIDE;
+    }
+}
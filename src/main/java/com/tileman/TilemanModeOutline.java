@@ -0,0 +1,140 @@
+package com.tileman;
+
+import net.runelite.api.Point;
+
+import java.awt.geom.Path2D;
+
+/**
+ * Border of the unlocked area on one plane of the scene, kept as a bit per tile edge in scene corner coordinates.
+ * Tiles marked or unmarked one at a time only update the four edges around them; the whole border is only rescanned
+ * when the plane changes or many tiles change at once, such as when the scene is rebuilt. Each frame the edges are
+ * then projected into a single path, instead of stroking every unlocked tile on its own.
+ */
+class TilemanModeOutline {
+    private static final int SCENE_SIZE = TilemanModeSceneGrid.SCENE_SIZE;
+    private static final int WORDS_PER_LINE = (SCENE_SIZE + Long.SIZE - 1) / Long.SIZE;
+
+    // Edges where exactly one side is unlocked. Horizontal edges run along the south side of tile (x, y) and are
+    // indexed by line y then x; vertical edges run along its west side and are indexed by line x then y
+    private final long[] horizontalEdges = new long[(SCENE_SIZE + 1) * WORDS_PER_LINE];
+    private final long[] verticalEdges = new long[(SCENE_SIZE + 1) * WORDS_PER_LINE];
+
+    private int gridVersion = -1;
+    private int plane = -1;
+
+    /**
+     * Brings the border up to date with the grid and plane, if either changed since the last call.
+     * @return true if the border changed.
+     */
+    boolean update(TilemanModeSceneGrid sceneGrid, int plane) {
+        int version = sceneGrid.getVersion();
+        if (version == gridVersion && plane == this.plane) {
+            return false;
+        }
+
+        int bulkVersion = sceneGrid.getBulkVersion();
+        if (plane == this.plane && gridVersion >= bulkVersion) {
+            for (int i = gridVersion - bulkVersion; i < version - bulkVersion; i++) {
+                int change = sceneGrid.getChange(i);
+                if ((change >> 16) == plane) {
+                    updateTileEdges(sceneGrid, change >> 8 & 0xFF, change & 0xFF);
+                }
+            }
+        } else {
+            for (int line = 0; line <= SCENE_SIZE; line++) {
+                for (int i = 0; i < SCENE_SIZE; i++) {
+                    setEdge(horizontalEdges, line, i, sceneGrid.contains(plane, i, line) != sceneGrid.contains(plane, i, line - 1));
+                    setEdge(verticalEdges, line, i, sceneGrid.contains(plane, line, i) != sceneGrid.contains(plane, line - 1, i));
+                }
+            }
+        }
+        gridVersion = version;
+        this.plane = plane;
+        return true;
+    }
+
+    /**
+     * @return true if the south side of tile (x, y), on line y, borders the unlocked area.
+     */
+    boolean hasHorizontalEdge(int x, int y) {
+        return hasEdge(horizontalEdges, y, x);
+    }
+
+    /**
+     * @return true if the west side of tile (x, y), on line x, borders the unlocked area.
+     */
+    boolean hasVerticalEdge(int x, int y) {
+        return hasEdge(verticalEdges, x, y);
+    }
+
+    /**
+     * Projects the part of the border inside the given scene rectangle into a path.
+     */
+    Path2D project(TilemanModeTilePolygonCache polygonCache, int minX, int minY, int maxX, int maxY) {
+        Path2D path = new Path2D.Float();
+        for (int y = Math.max(minY, 0); y <= Math.min(maxY, SCENE_SIZE); y++) {
+            boolean drawing = false;
+            for (int x = Math.max(minX, 0); x <= maxX; x++) {
+                // A corner is on the border if the edge on either side of it is
+                boolean before = x > minX && hasHorizontalEdge(x - 1, y);
+                if (!before && !hasHorizontalEdge(x, y)) {
+                    continue;
+                }
+                drawing = appendCorner(path, polygonCache.getCorner(x, y), drawing && before);
+            }
+        }
+        for (int x = Math.max(minX, 0); x <= Math.min(maxX, SCENE_SIZE); x++) {
+            boolean drawing = false;
+            for (int y = Math.max(minY, 0); y <= maxY; y++) {
+                boolean before = y > minY && hasVerticalEdge(x, y - 1);
+                if (!before && !hasVerticalEdge(x, y)) {
+                    continue;
+                }
+                drawing = appendCorner(path, polygonCache.getCorner(x, y), drawing && before);
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Recomputes the four edges around tile (x, y).
+     */
+    private void updateTileEdges(TilemanModeSceneGrid sceneGrid, int x, int y) {
+        boolean unlocked = sceneGrid.contains(plane, x, y);
+        setEdge(horizontalEdges, y, x, unlocked != sceneGrid.contains(plane, x, y - 1));
+        setEdge(horizontalEdges, y + 1, x, unlocked != sceneGrid.contains(plane, x, y + 1));
+        setEdge(verticalEdges, x, y, unlocked != sceneGrid.contains(plane, x - 1, y));
+        setEdge(verticalEdges, x + 1, y, unlocked != sceneGrid.contains(plane, x + 1, y));
+    }
+
+    private static boolean hasEdge(long[] edges, int line, int i) {
+        if (line < 0 || line > SCENE_SIZE || i < 0 || i >= SCENE_SIZE) {
+            return false;
+        }
+        return (edges[line * WORDS_PER_LINE + (i >> 6)] & (1L << i)) != 0;
+    }
+
+    private static void setEdge(long[] edges, int line, int i, boolean edge) {
+        if (line < 0 || line > SCENE_SIZE || i < 0 || i >= SCENE_SIZE) {
+            return;
+        }
+        if (edge) {
+            edges[line * WORDS_PER_LINE + (i >> 6)] |= 1L << i;
+        } else {
+            edges[line * WORDS_PER_LINE + (i >> 6)] &= ~(1L << i);
+        }
+    }
+
+    private static boolean appendCorner(Path2D path, Point corner, boolean drawing) {
+        // Corners behind the camera break the run in two
+        if (corner == null) {
+            return false;
+        }
+        if (drawing) {
+            path.lineTo(corner.getX(), corner.getY());
+        } else {
+            path.moveTo(corner.getX(), corner.getY());
+        }
+        return true;
+    }
+}
@@ -27,31 +27,42 @@
 package com.tileman;
 
 import net.runelite.api.Client;
-import net.runelite.api.Perspective;
 import net.runelite.api.coords.LocalPoint;
-import net.runelite.api.coords.WorldPoint;
 import net.runelite.client.ui.overlay.*;
 
 import javax.inject.Inject;
 import java.awt.*;
-import java.util.Collection;
+import java.awt.geom.Path2D;
 
 public class TilemanModeOverlay extends Overlay
 {
 	private static final int MAX_DRAW_DISTANCE = 32;
+	private static final int FILL_ALPHA = 50;
 
 	private final Client client;
 	private final TilemanModePlugin plugin;
+	private final TilemanModeTilePolygonCache polygonCache;
+	private final TilemanModeProfiler profiler;
+	private final TilemanModeOutline outline = new TilemanModeOutline();
+
+	// Merged shapes of the outline render mode, rebuilt only when the tiles, camera or player tile change
+	private Path2D outlinePath;
+	private Path2D fillPath;
+	private int shapeGeneration = -1;
+	private int shapeX = -1;
+	private int shapeY = -1;
 
 	@Inject
 	private TilemanModeConfig config;
 
 	@Inject
-	private TilemanModeOverlay(Client client, TilemanModeConfig config, TilemanModePlugin plugin)
+	private TilemanModeOverlay(Client client, TilemanModeConfig config, TilemanModePlugin plugin, TilemanModeProfiler profiler)
 	{
 		this.client = client;
 		this.plugin = plugin;
 		this.config = config;
+		this.profiler = profiler;
+		this.polygonCache = new TilemanModeTilePolygonCache(client);
 		setPosition(OverlayPosition.DYNAMIC);
 		setPriority(OverlayPriority.LOW);
 		setLayer(OverlayLayer.ABOVE_SCENE);
@@ -60,42 +71,115 @@ public class TilemanModeOverlay extends Overlay
 	@Override
 	public Dimension render(Graphics2D graphics)
 	{
-		final Collection<WorldPoint> points = plugin.getPoints();
-		for (final WorldPoint point : points)
+		final long start = profiler.start(TilemanModeProfiler.Section.SCENE_OVERLAY);
+		try
 		{
-			if (point.getPlane() != client.getPlane())
-			{
-				continue;
-			}
-
-			drawTile(graphics, point);
+			drawTiles(graphics);
+		}
+		finally
+		{
+			profiler.stop(TilemanModeProfiler.Section.SCENE_OVERLAY, start);
 		}
-
 		return null;
 	}
 
-	private void drawTile(Graphics2D graphics, WorldPoint point)
+	private void drawTiles(Graphics2D graphics)
 	{
-		WorldPoint playerLocation = client.getLocalPlayer().getWorldLocation();
-
-		if (point.distanceTo(playerLocation) >= MAX_DRAW_DISTANCE)
+		final LocalPoint playerLocation = client.getLocalPlayer().getLocalLocation();
+		if (playerLocation == null)
 		{
 			return;
 		}
 
-		LocalPoint lp = LocalPoint.fromWorld(client, point);
-		if (lp == null)
+		polygonCache.update();
+
+		// Only visit the tiles within draw distance of the player
+		final TilemanModeSceneGrid sceneGrid = plugin.getSceneGrid();
+		final int plane = client.getPlane();
+		final int playerX = playerLocation.getSceneX();
+		final int playerY = playerLocation.getSceneY();
+		final Color color = getTileColor();
+
+		if (config.renderMode() == TilemanModeConfig.TilemanRenderMode.OUTLINE)
 		{
+			drawOutline(graphics, sceneGrid, plane, playerX, playerY, color);
 			return;
 		}
 
-		Polygon poly = Perspective.getCanvasTilePoly(client, lp);
+		for (int x = playerX - MAX_DRAW_DISTANCE + 1; x < playerX + MAX_DRAW_DISTANCE; x++)
+		{
+			for (int y = playerY - MAX_DRAW_DISTANCE + 1; y < playerY + MAX_DRAW_DISTANCE; y++)
+			{
+				if (sceneGrid.contains(plane, x, y))
+				{
+					drawTile(graphics, x, y, color);
+				}
+			}
+		}
+	}
+
+	private void drawTile(Graphics2D graphics, int sceneX, int sceneY, Color color)
+	{
+		Polygon poly = polygonCache.getTilePoly(sceneX, sceneY);
 		if (poly == null)
 		{
 			return;
 		}
 
-		OverlayUtil.renderPolygon(graphics, poly, getTileColor());
+		OverlayUtil.renderPolygon(graphics, poly, color);
+	}
+
+	private void drawOutline(Graphics2D graphics, TilemanModeSceneGrid sceneGrid, int plane, int playerX, int playerY, Color color)
+	{
+		final boolean outlineChanged = outline.update(sceneGrid, plane);
+		final boolean fill = config.fillOutline();
+		final boolean shapeChanged = outlineChanged || shapeGeneration != polygonCache.getGeneration() || shapeX != playerX || shapeY != playerY;
+		final int minX = playerX - MAX_DRAW_DISTANCE + 1;
+		final int minY = playerY - MAX_DRAW_DISTANCE + 1;
+		final int maxX = playerX + MAX_DRAW_DISTANCE;
+		final int maxY = playerY + MAX_DRAW_DISTANCE;
+		if (shapeChanged)
+		{
+			outlinePath = outline.project(polygonCache, minX, minY, maxX, maxY);
+			// Only built again once filling is turned on
+			fillPath = null;
+			shapeGeneration = polygonCache.getGeneration();
+			shapeX = playerX;
+			shapeY = playerY;
+		}
+
+		if (fill && fillPath == null)
+		{
+			// Tile polygons share the same winding, so together they fill the area without seams
+			fillPath = new Path2D.Float(Path2D.WIND_NON_ZERO);
+			for (int x = minX; x < maxX; x++)
+			{
+				for (int y = minY; y < maxY; y++)
+				{
+					if (!sceneGrid.contains(plane, x, y))
+					{
+						continue;
+					}
+					final Polygon poly = polygonCache.getTilePoly(x, y);
+					if (poly != null)
+					{
+						fillPath.append(poly, false);
+					}
+				}
+			}
+		}
+
+		if (fill)
+		{
+			graphics.setColor(new Color(color.getRed(), color.getGreen(), color.getBlue(), FILL_ALPHA));
+			graphics.fill(fillPath);
+		}
+
+		final Stroke originalStroke = graphics.getStroke();
+		graphics.setColor(color);
+		graphics.setStroke(new BasicStroke(2));
+		graphics.draw(outlinePath);
+		graphics.setStroke(originalStroke);
 	}
 
 	private Color getTileColor() {
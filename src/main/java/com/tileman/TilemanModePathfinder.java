@@ -0,0 +1,132 @@
+package com.tileman;
+
+import net.runelite.api.CollisionDataFlag;
+
+/**
+ * Reconstructs the route the player took between two scene tiles when ticks were skipped, with a breadth first
+ * search over the scene collision flags that follows the game's own movement rules.
+ * Every buffer is allocated up front and visited tiles are tracked with a stamp, so a search allocates nothing
+ * and is safe to run on the client thread.
+ */
+class TilemanModePathfinder {
+    private static final int SCENE_SIZE = TilemanModeSceneGrid.SCENE_SIZE;
+    private static final int BLOCK_FULL = CollisionDataFlag.BLOCK_MOVEMENT_FULL;
+
+    // Neighbours in the order the game's pathfinder tries them: W, E, S, N, SW, SE, NW, NE
+    private static final int[] DX = {-1, 1, 0, 0, -1, 1, -1, 1};
+    private static final int[] DY = {0, 0, -1, 1, -1, -1, 1, 1};
+
+    private final int[] queue = new int[SCENE_SIZE * SCENE_SIZE];
+    private final int[] visitedIn = new int[SCENE_SIZE * SCENE_SIZE];
+    private final int[] previous = new int[SCENE_SIZE * SCENE_SIZE];
+    private final int[] distance = new int[SCENE_SIZE * SCENE_SIZE];
+    private final int[] path = new int[SCENE_SIZE * SCENE_SIZE];
+    private int search;
+
+    /**
+     * Finds the shortest walkable route between two tiles on the same plane.
+     * @param maxLength the longest route to consider, in steps.
+     * @return the number of tiles strictly between start and end, readable through {@link #getPathX(int)} and
+     * {@link #getPathY(int)} from the start onwards, or -1 if the end can't be reached within maxLength steps.
+     */
+    int findPath(TilemanModeCollisionMap collisionMap, int plane, int startX, int startY, int endX, int endY, int maxLength) {
+        if (!inScene(startX, startY) || !inScene(endX, endY)) {
+            return -1;
+        }
+
+        search++;
+        int start = index(startX, startY);
+        int end = index(endX, endY);
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        visitedIn[start] = search;
+        distance[start] = 0;
+
+        while (head < tail) {
+            int current = queue[head++];
+            if (current == end) {
+                return buildPath(start, end);
+            }
+            if (distance[current] >= maxLength) {
+                continue;
+            }
+
+            int x = current % SCENE_SIZE;
+            int y = current / SCENE_SIZE;
+            for (int direction = 0; direction < DX.length; direction++) {
+                int nextX = x + DX[direction];
+                int nextY = y + DY[direction];
+                if (!inScene(nextX, nextY)) {
+                    continue;
+                }
+                int next = index(nextX, nextY);
+                if (visitedIn[next] == search || !canMove(collisionMap, plane, x, y, DX[direction], DY[direction])) {
+                    continue;
+                }
+                visitedIn[next] = search;
+                previous[next] = current;
+                distance[next] = distance[current] + 1;
+                queue[tail++] = next;
+            }
+        }
+        return -1;
+    }
+
+    int getPathX(int step) {
+        return path[step] % SCENE_SIZE;
+    }
+
+    int getPathY(int step) {
+        return path[step] / SCENE_SIZE;
+    }
+
+    private int buildPath(int start, int end) {
+        int length = distance[end] - 1;
+        int step = length - 1;
+        for (int tile = previous[end]; tile != start && step >= 0; tile = previous[tile]) {
+            path[step--] = tile;
+        }
+        return Math.max(length, 0);
+    }
+
+    /**
+     * Whether a single step from (x, y) in the given direction is allowed, following the game's collision rules.
+     */
+    static boolean canMove(TilemanModeCollisionMap collisionMap, int plane, int x, int y, int dx, int dy) {
+        int destination = collisionMap.getFlags(plane, x + dx, y + dy);
+        if (dx == 0 || dy == 0) {
+            return (destination & (BLOCK_FULL | blockingFromDirection(-dx, -dy))) == 0;
+        }
+
+        // Diagonal steps also need both of the straight steps around the corner to be open
+        int horizontal = collisionMap.getFlags(plane, x + dx, y);
+        int vertical = collisionMap.getFlags(plane, x, y + dy);
+        return (destination & (BLOCK_FULL | blockingFromDirection(-dx, 0) | blockingFromDirection(0, -dy) | blockingFromDirection(-dx, -dy))) == 0
+                && (horizontal & (BLOCK_FULL | blockingFromDirection(-dx, 0))) == 0
+                && (vertical & (BLOCK_FULL | blockingFromDirection(0, -dy))) == 0;
+    }
+
+    /**
+     * @return the flag that blocks a tile's side facing the given direction.
+     */
+    private static int blockingFromDirection(int dx, int dy) {
+        if (dx < 0) {
+            return dy < 0 ? CollisionDataFlag.BLOCK_MOVEMENT_SOUTH_WEST
+                    : dy > 0 ? CollisionDataFlag.BLOCK_MOVEMENT_NORTH_WEST : CollisionDataFlag.BLOCK_MOVEMENT_WEST;
+        }
+        if (dx > 0) {
+            return dy < 0 ? CollisionDataFlag.BLOCK_MOVEMENT_SOUTH_EAST
+                    : dy > 0 ? CollisionDataFlag.BLOCK_MOVEMENT_NORTH_EAST : CollisionDataFlag.BLOCK_MOVEMENT_EAST;
+        }
+        return dy < 0 ? CollisionDataFlag.BLOCK_MOVEMENT_SOUTH : CollisionDataFlag.BLOCK_MOVEMENT_NORTH;
+    }
+
+    private static boolean inScene(int x, int y) {
+        return x >= 0 && x < SCENE_SIZE && y >= 0 && y < SCENE_SIZE;
+    }
+
+    private static int index(int x, int y) {
+        return y * SCENE_SIZE + x;
+    }
+}
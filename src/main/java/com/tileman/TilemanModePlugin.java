@@ -26,31 +26,32 @@
  */
 package com.tileman;
 
-import com.google.common.base.Strings;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 import com.google.inject.Provides;
 import lombok.AccessLevel;
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.*;
 import net.runelite.api.coords.LocalPoint;
 import net.runelite.api.coords.WorldPoint;
 import net.runelite.api.events.*;
+import net.runelite.client.RuneLite;
+import net.runelite.client.callback.ClientThread;
 import net.runelite.client.config.ConfigManager;
 import net.runelite.client.eventbus.Subscribe;
 import net.runelite.client.events.ConfigChanged;
 import net.runelite.client.plugins.Plugin;
 import net.runelite.client.plugins.PluginDescriptor;
+import net.runelite.client.task.Schedule;
 import net.runelite.client.ui.ClientToolbar;
 import net.runelite.client.ui.NavigationButton;
 import net.runelite.client.ui.overlay.OverlayManager;
 import net.runelite.client.util.ImageUtil;
 
 import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Slf4j
 @PluginDescriptor(
@@ -59,16 +60,41 @@ import java.util.stream.Collectors;
         tags = {"overlay", "tiles"}
 )
 public class TilemanModePlugin extends Plugin {
-    private static final String CONFIG_GROUP = "tilemanMode";
     private static final String MARK = "Unlock Tileman tile";
     private static final String UNMARK = "Clear Tileman tile";
+    private static final String UNDO = "Undo Tileman tile";
     private static final String WALK_HERE = "Walk here";
-    private static final String REGION_PREFIX = "region_";
+    private static final String GROUND_MARKER_GROUP = "groundMarker";
+    private static final Path JOURNAL_DIR = RuneLite.RUNELITE_DIR.toPath().resolve("tileman");
+
+    /**
+     * Follows a Ground Marker import. Progress is reported from the background worker, and the finish from the
+     * client thread.
+     */
+    interface ImportListener {
+        /**
+         * Polled between regions; once it returns true the import stops after the region being merged.
+         */
+        boolean isCancelled();
+
+        void progress(int regionsImported, int regionCount);
 
-    private static final Gson GSON = new Gson();
+        void finished(int tilesImported, boolean cancelled);
+    }
+
+    /**
+     * Told, on the background worker, when a tile file has been written or read.
+     */
+    interface TileFileListener {
+        /**
+         * @param tiles the number of tiles written, or newly unlocked when reading.
+         * @param error why the file couldn't be written or read, or null if it was.
+         */
+        void finished(int tiles, IOException error);
+    }
 
     @Getter(AccessLevel.PACKAGE)
-    private final List<WorldPoint> points = new ArrayList<>();
+    private final TilemanModeSceneGrid sceneGrid = new TilemanModeSceneGrid();
 
     @Inject
     private Client client;
@@ -76,9 +102,6 @@ public class TilemanModePlugin extends Plugin {
     @Inject
     private TilemanModeConfigEvaluator config;
 
-    @Inject
-    private ConfigManager configManager;
-
     @Inject
     private OverlayManager overlayManager;
 
@@ -94,34 +117,58 @@ public class TilemanModePlugin extends Plugin {
     @Inject
     private TileInfoOverlay infoOverlay;
 
+    @Inject
+    private TilemanModeDiagnosticsOverlay diagnosticsOverlay;
+
+    @Inject
+    private TilemanModeProfiler profiler;
+
+    @Inject
+    private TilemanModeWorker worker;
+
     @Inject
     private ClientToolbar clientToolbar;
 
+    @Inject
+    private ConfigManager configManager;
+
+    @Inject
+    private ClientThread clientThread;
+
+    @Inject
+    @Getter(AccessLevel.PACKAGE)
+    private TilemanModeTileStore tileStore;
+
     @Provides
     TilemanModeConfig provideConfig(ConfigManager configManager) {
         return configManager.getConfig(TilemanModeConfig.class);
     }
 
-    private final MovementFlag[] fullBlock = new MovementFlag[]
-            {MovementFlag.BLOCK_MOVEMENT_FLOOR,
-                    MovementFlag.BLOCK_MOVEMENT_FLOOR_DECORATION,
-                    MovementFlag.BLOCK_MOVEMENT_OBJECT,
-                    MovementFlag.BLOCK_MOVEMENT_FULL};
-
-    private final MovementFlag[] allDirections = new MovementFlag[]
-            {
-                    MovementFlag.BLOCK_MOVEMENT_NORTH_WEST,
-                    MovementFlag.BLOCK_MOVEMENT_NORTH,
-                    MovementFlag.BLOCK_MOVEMENT_NORTH_EAST,
-                    MovementFlag.BLOCK_MOVEMENT_EAST,
-                    MovementFlag.BLOCK_MOVEMENT_SOUTH_EAST,
-                    MovementFlag.BLOCK_MOVEMENT_SOUTH,
-                    MovementFlag.BLOCK_MOVEMENT_SOUTH_WEST,
-                    MovementFlag.BLOCK_MOVEMENT_WEST
-            };
+    private final TilemanModeCollisionMap collisionMap = new TilemanModeCollisionMap();
+    private final TilemanModeAutoMarker autoMarker = new TilemanModeAutoMarker(collisionMap);
+    private final TilemanModeAutoMarker.TileMarker autoMarkTile = localPoint -> updateTileMark(localPoint, true);
 
     private final HashSet<Integer> tutorialIslandRegionIds = new HashSet<Integer>();
 
+    // Bumped by every scene load, so a rebuild finishing after the next load has started is dropped
+    private int sceneGeneration;
+    private boolean rebuildingScene;
+    // Tiles marked or unmarked while the scene is being rebuilt, replayed over the rebuilt grid
+    private final List<Integer> sceneChanges = new ArrayList<>();
+    // Chunk translation of the loaded instance, or null outside instances
+    private TilemanModeInstanceMap instanceMap;
+    // Scene base the grid's tiles are placed relative to
+    private int sceneGridBaseX, sceneGridBaseY;
+
+    // Profile whose tiles are loaded or being loaded
+    private String selectedProfile;
+    // Bumped by every warm-up and by shutDown, so only the latest warm-up does its work and publishes
+    private volatile int warmUpGeneration;
+    private final Object warmUpLock = new Object();
+    // True from when a warm-up is scheduled until it publishes; tiles can't be marked in the meantime
+    @Getter(AccessLevel.PACKAGE)
+    private volatile boolean loading;
+
     private int totalTilesUsed, remainingTiles, xpUntilNextTile;
     private LocalPoint lastTile;
     private int lastPlane;
@@ -131,8 +178,14 @@ public class TilemanModePlugin extends Plugin {
 
     @Subscribe
     public void onMenuOptionClicked(MenuOptionClicked event) {
-        if (event.getMenuAction().getId() != MenuAction.RUNELITE.getId() ||
-                !(event.getMenuOption().equals(MARK) || event.getMenuOption().equals(UNMARK))) {
+        if (event.getMenuAction().getId() != MenuAction.RUNELITE.getId()) {
+            return;
+        }
+        if (event.getMenuOption().equals(UNDO)) {
+            undoTileMark();
+            return;
+        }
+        if (!(event.getMenuOption().equals(MARK) || event.getMenuOption().equals(UNMARK))) {
             return;
         }
 
@@ -145,8 +198,17 @@ public class TilemanModePlugin extends Plugin {
 
     @Subscribe
     public void onMenuEntryAdded(MenuEntryAdded event) {
+        final long start = profiler.start(TilemanModeProfiler.Section.MENU_ENTRY_ADDED);
+        try {
+            addMarkMenuEntry(event);
+        } finally {
+            profiler.stop(TilemanModeProfiler.Section.MENU_ENTRY_ADDED, start);
+        }
+    }
+
+    private void addMarkMenuEntry(MenuEntryAdded event) {
         final boolean hotKeyPressed = client.isKeyPressed(KeyCode.KC_SHIFT);
-        if (hotKeyPressed && event.getOption().equals(WALK_HERE)) {
+        if (hotKeyPressed && !loading && event.getOption().equals(WALK_HERE)) {
             final Tile selectedSceneTile = client.getSelectedSceneTile();
 
             if (selectedSceneTile == null) {
@@ -159,38 +221,115 @@ public class TilemanModePlugin extends Plugin {
             final TilemanModeTile point = new TilemanModeTile(regionId, worldPoint.getRegionX(), worldPoint.getRegionY(), client.getPlane());
 
             client.createMenuEntry(-1)
-                    .setOption(getTiles(regionId).contains(point) ? UNMARK : MARK)
+                    .setOption(tileStore.contains(point) ? UNMARK : MARK)
                     .setTarget(event.getTarget())
                     .setType(MenuAction.RUNELITE);
 
+            if (tileStore.canUndo()) {
+                client.createMenuEntry(-1)
+                        .setOption(UNDO)
+                        .setTarget(event.getTarget())
+                        .setType(MenuAction.RUNELITE);
+            }
         }
     }
 
     @Subscribe
     public void onGameTick(GameTick tick) {
-        autoMark();
+        final long start = profiler.start(TilemanModeProfiler.Section.GAME_TICK);
+        try {
+            // The profile key can be set a little after LOGGED_IN on the first login, so check again before marking
+            selectAccount();
+            if (!loading) {
+                autoMark();
+            }
+        } finally {
+            profiler.stop(TilemanModeProfiler.Section.GAME_TICK, start);
+        }
+    }
+
+    @Subscribe
+    public void onGameObjectDespawned(GameObjectDespawned event) {
+        collisionMap.invalidate(event.getGameObject().getPlane());
+    }
+
+    @Subscribe
+    public void onWallObjectSpawned(WallObjectSpawned event) {
+        collisionMap.invalidate(event.getWallObject().getPlane());
+    }
+
+    @Subscribe
+    public void onWallObjectDespawned(WallObjectDespawned event) {
+        collisionMap.invalidate(event.getWallObject().getPlane());
+    }
+
+    @Subscribe
+    public void onGroundObjectSpawned(GroundObjectSpawned event) {
+        collisionMap.invalidate(event.getGroundObject().getPlane());
+    }
+
+    @Subscribe
+    public void onGroundObjectDespawned(GroundObjectDespawned event) {
+        collisionMap.invalidate(event.getGroundObject().getPlane());
     }
 
     @Subscribe
     public void onGameStateChanged(GameStateChanged gameStateChanged) {
+        if (gameStateChanged.getGameState() == GameState.LOGIN_SCREEN
+                || gameStateChanged.getGameState() == GameState.HOPPING) {
+            worker.execute("tile save", tileStore::compactJournal);
+        }
         if (gameStateChanged.getGameState() != GameState.LOGGED_IN) {
             lastTile = null;
             return;
         }
-        loadPoints();
-        updateTileCounter();
+        selectAccount();
+        collisionMap.invalidate();
+        // A warm-up rebuilds the scene itself once the tiles are loaded
+        if (!loading) {
+            loadPoints();
+        }
         inHouse = false;
     }
 
+    /**
+     * Writes regions changed since the last flush, bounding how much walking a crash can lose.
+     */
+    @Schedule(
+            period = 10,
+            unit = ChronoUnit.SECONDS,
+            asynchronous = true
+    )
+    public void flushTiles() {
+        final long start = profiler.start(TilemanModeProfiler.Section.SAVE_TILES);
+        try {
+            tileStore.flush();
+        } finally {
+            profiler.stop(TilemanModeProfiler.Section.SAVE_TILES, start);
+        }
+    }
+
     @Subscribe
     public void onConfigChanged(ConfigChanged event) {
+        // Tiles are saved to the same group, mostly by the background flush, so only react to the settings themselves
+        if (!TilemanModeTileStore.CONFIG_GROUP.equals(event.getGroup()) || TilemanModeTileStore.isTileKey(event.getKey())) {
+            return;
+        }
+        clientThread.invokeLater(this::applyConfig);
+    }
+
+    private void applyConfig() {
         // Check if automark tiles is on, and if so attempt to step on current tile
-        final WorldPoint playerPos = client.getLocalPlayer().getWorldLocation();
-        final LocalPoint playerPosLocal = LocalPoint.fromWorld(client, playerPos);
-        if (playerPosLocal != null && config.automarkTiles() && !lastAutoTilesConfig) {
-            handleWalkedToTile(playerPosLocal);
+        final Player player = client.getLocalPlayer();
+        if (player != null) {
+            final LocalPoint playerPosLocal = LocalPoint.fromWorld(client, player.getWorldLocation());
+            if (playerPosLocal != null && config.automarkTiles() && !lastAutoTilesConfig) {
+                handleWalkedToTile(playerPosLocal);
+            }
         }
         lastAutoTilesConfig = config.automarkTiles();
+        profiler.setEnabled(config.showDiagnostics());
+        tileStore.setCacheBudget(config.regionCacheSize() * 1024L * 1024L);
         updateTileCounter();
     }
 
@@ -198,6 +337,7 @@ public class TilemanModePlugin extends Plugin {
     @Subscribe
     public void onGameObjectSpawned(GameObjectSpawned event) {
         GameObject gameObject = event.getGameObject();
+        collisionMap.invalidate(gameObject.getPlane());
 
         if (gameObject.getId() == 4525) {
             inHouse = true;
@@ -215,8 +355,12 @@ public class TilemanModePlugin extends Plugin {
         overlayManager.add(minimapOverlay);
         overlayManager.add(worldMapOverlay);
         overlayManager.add(infoOverlay);
-        loadPoints();
-        updateTileCounter();
+        overlayManager.add(diagnosticsOverlay);
+        profiler.setEnabled(config.showDiagnostics());
+        tileStore.setCacheBudget(config.regionCacheSize() * 1024L * 1024L);
+        worker.start();
+        selectedProfile = configManager.getRSProfileKey();
+        warmUp(selectedProfile);
         log.debug("startup");
         TilemanImportPanel panel = new TilemanImportPanel(this);
         NavigationButton navButton = NavigationButton.builder()
@@ -236,7 +380,91 @@ public class TilemanModePlugin extends Plugin {
         overlayManager.remove(minimapOverlay);
         overlayManager.remove(worldMapOverlay);
         overlayManager.remove(infoOverlay);
-        points.clear();
+        overlayManager.remove(diagnosticsOverlay);
+        profiler.setEnabled(false);
+        sceneGrid.clear();
+        warmUpGeneration++;
+        loading = false;
+        worker.stop();
+        synchronized (warmUpLock) {
+            tileStore.compactJournal();
+            tileStore.clear();
+            closeJournal();
+        }
+    }
+
+    /**
+     * Switches to the tiles of the logged in account if another account's, or the legacy tiles, are loaded.
+     * Tiles still kept outside any account are merged into the account as it is selected.
+     */
+    private void selectAccount() {
+        String profile = configManager.getRSProfileKey();
+        if (profile == null || profile.equals(selectedProfile)) {
+            return;
+        }
+
+        log.debug("Switching tiles to profile {}", profile);
+        selectedProfile = profile;
+        warmUp(profile);
+    }
+
+    /**
+     * Loads the tiles of a profile on the background worker: opens its journal, lists its regions, replays and
+     * migrates whatever needs it, and counts the tiles from the summary. The count is published on the client thread,
+     * which then rebuilds the scene. Until then the overlays show the tiles as loading.
+     */
+    private void warmUp(String profile) {
+        final int generation = ++warmUpGeneration;
+        loading = true;
+        // Tiles of the last account aren't drawn while this one loads
+        sceneGrid.clear();
+        worker.submit("tile warm-up", () -> {
+            synchronized (warmUpLock) {
+                // Superseded by a later warm-up, or the plugin was shut down
+                if (generation != warmUpGeneration) {
+                    return 0;
+                }
+                tileStore.setProfile(profile);
+                closeJournal();
+                openJournal();
+                tileStore.load();
+                tileStore.migrateLegacyRegions();
+                return tileStore.countTiles();
+            }
+        }, total -> {
+            if (generation != warmUpGeneration) {
+                return;
+            }
+            loading = false;
+            updateTotalTilesUsed(total);
+            lastTile = null;
+            loadPoints();
+        });
+    }
+
+    /**
+     * Opens the journal of the selected account, each account keeping its own next to the others.
+     */
+    private void openJournal() {
+        String profile = tileStore.getProfile();
+        String name = profile == null ? "tiles" : profile.replaceAll("[^A-Za-z0-9.-]", "_");
+        try {
+            tileStore.setJournal(TilemanModeJournal.open(JOURNAL_DIR.resolve(name + ".journal")));
+        } catch (IOException e) {
+            log.warn("Unable to open the tile journal, tile changes are only saved by the regular flush", e);
+        }
+    }
+
+    private void closeJournal() {
+        TilemanModeJournal journal = tileStore.getJournal();
+        tileStore.setJournal(null);
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                log.warn("Unable to close the tile journal", e);
+            }
+        }
     }
 
     private void autoMark() {
@@ -269,90 +497,155 @@ public class TilemanModePlugin extends Plugin {
         }
     }
 
-    public void importGroundMarkerTiles() {
-        // Get and store all the Ground Markers Regions
-        List<String> groundMarkerRegions = getAllRegionIds("groundMarker");
-        // If none, Exit function
-
-        // Get and store array list of existing Tileman World Regions (like updateTileCounter does)
-        List<String> tilemanModeRegions = getAllRegionIds(CONFIG_GROUP);
-
-        // CONVERSION
-        // Loop through Ground Marker Regions
-        for (String region : groundMarkerRegions) {
-            // Get Ground Markers Region's Tiles
-            ArrayList<TilemanModeTile> groundMarkerTiles =
-                    new ArrayList<>(getConfiguration("groundMarker", REGION_PREFIX + region));
-            // If region already exists in Tileman World Regions Array:
-            if (tilemanModeRegions.contains(region)) {
-                // Create Empty ArrayList for Region;
-                // Get Tileman Region's tiles and add them to the region array list
-                ArrayList<TilemanModeTile> regionTiles = new ArrayList<>(getTiles(region));
-
-                // Create int for regionOriginalSize;
-                // Set regionOriginalSize to arraylists length
-                int regionOriginalSize = regionTiles.size();
-
-                // Loop through Ground Markers Points
-                for (TilemanModeTile groundMarkerTile : groundMarkerTiles) {
-                    // If Ground Marker point already exists in Tileman World Region: Break loop iteration
-                    if (regionTiles.contains(groundMarkerTile)) {
-                        continue;
+    /**
+     * Merges every Ground Marker region into the unlocked tiles on the background worker, one region at a time,
+     * so the client stays responsive however many markers there are. Each merged region is written once by the
+     * flush at the end, and the counter and scene are refreshed on the client thread once the import stops.
+     *
+     * The import belongs to the warm-up generation it was started in. Each region is merged under the warm-up lock
+     * only while that generation is current, so once another account starts loading or the plugin shuts down the
+     * import stops like a cancel, and nothing is merged into tiles it wasn't started on.
+     */
+    void importGroundMarkerTiles(ImportListener listener) {
+        final int generation = warmUpGeneration;
+        worker.execute("Ground Marker import", () -> {
+            int imported = 0;
+            boolean cancelled = false;
+            try {
+                imported = importGroundMarkerRegions(listener, generation);
+                synchronized (warmUpLock) {
+                    cancelled = listener.isCancelled() || generation != warmUpGeneration;
+                    // When superseded, the warm-up or shutdown that did so has already saved the merged regions
+                    if (generation == warmUpGeneration) {
+                        tileStore.flush();
                     }
-                    // Add point to array list
-                    regionTiles.add(groundMarkerTile);
-                }
-                // If regionOriginalSize != current size
-                if (regionOriginalSize != regionTiles.size()) {
-                    // Save points for arrayList
-                    savePoints(Integer.parseInt(region), regionTiles);
                 }
-            } else {
-                // Save points for that region
-                savePoints(Integer.parseInt(region), groundMarkerTiles);
+            } catch (RuntimeException e) {
+                log.warn("Unable to import Ground Marker tiles", e);
+            } finally {
+                // Regions merged before a cancel or failure are kept, so always refresh
+                final int tilesImported = imported;
+                final boolean importCancelled = cancelled;
+                clientThread.invokeLater(() -> {
+                    // Otherwise the warm-up refreshes them once it publishes
+                    if (!loading && generation == warmUpGeneration) {
+                        recountTiles();
+                        loadPoints();
+                    }
+                    listener.finished(tilesImported, importCancelled);
+                });
             }
-        }
-        loadPoints();
+        });
     }
 
-    List<String> getAllRegionIds(String configGroup) {
-        return removeRegionPrefixes(configManager.getConfigurationKeys(configGroup + ".region"));
+    /**
+     * Writes every unlocked tile to a standalone backup file on the background worker.
+     * Refused while tiles are loading, as the backup would miss those not loaded yet.
+     */
+    void exportTiles(Path path, TileFileListener listener) {
+        worker.execute("tile export", () -> {
+            if (loading) {
+                listener.finished(0, new IOException("Tiles are still loading, try again shortly"));
+                return;
+            }
+            try {
+                listener.finished(TilemanModeTileFile.write(tileStore, path), null);
+            } catch (IOException e) {
+                log.warn("Unable to export tiles to {}", path, e);
+                listener.finished(0, e);
+            }
+        });
+    }
+
+    /**
+     * Merges the tiles of a backup file into the unlocked tiles on the background worker, then writes the merged
+     * regions and refreshes the counter and scene like a Ground Marker import. Refused while tiles are loading, and
+     * done under the warm-up lock only if no other account started loading since it was asked for, so the tiles are
+     * never merged into an account that is being switched away from.
+     */
+    void importTiles(Path path, TileFileListener listener) {
+        final int generation = warmUpGeneration;
+        worker.execute("tile import", () -> {
+            int imported = 0;
+            IOException error = null;
+            synchronized (warmUpLock) {
+                if (loading || generation != warmUpGeneration) {
+                    listener.finished(0, new IOException("Tiles are still loading, try again shortly"));
+                    return;
+                }
+                try {
+                    imported = TilemanModeTileFile.read(path, tileStore);
+                } catch (IOException e) {
+                    log.warn("Unable to import tiles from {}", path, e);
+                    error = e;
+                }
+                tileStore.flush();
+            }
+            listener.finished(imported, error);
+            clientThread.invokeLater(() -> {
+                if (!loading) {
+                    recountTiles();
+                    loadPoints();
+                }
+            });
+        });
     }
 
-    private List<String> removeRegionPrefixes(List<String> regions) {
-        List<String> trimmedRegions = new ArrayList<String>();
-        for (String region : regions) {
-            trimmedRegions.add(removeRegionPrefix(region));
-        }
-        return trimmedRegions;
+    /**
+     * @return the number of newly unlocked tiles.
+     */
+    int importGroundMarkerRegions(ImportListener listener) {
+        return importGroundMarkerRegions(listener, warmUpGeneration);
     }
 
-    private String removeRegionPrefix(String region) {
-        return region.substring(region.indexOf('_') + 1);
-    }
+    private int importGroundMarkerRegions(ImportListener listener, int generation) {
+        List<String> groundMarkerRegions = tileStore.getAllRegionIds(GROUND_MARKER_GROUP);
 
-    Collection<TilemanModeTile> getTiles(int regionId) {
-        return getConfiguration(CONFIG_GROUP, REGION_PREFIX + regionId);
+        // Merge each Ground Marker region into the matching Tileman region, skipping tiles already unlocked
+        int imported = 0;
+        for (int i = 0; i < groundMarkerRegions.size(); i++) {
+            if (listener.isCancelled()) {
+                break;
+            }
+
+            String region = groundMarkerRegions.get(i);
+            synchronized (warmUpLock) {
+                // Superseded by another account's warm-up, or the plugin was shut down
+                if (generation != warmUpGeneration) {
+                    break;
+                }
+                try {
+                    Collection<TilemanModeTile> groundMarkerTiles =
+                            tileStore.getConfiguration(GROUND_MARKER_GROUP, TilemanModeTileStore.REGION_PREFIX + region);
+                    imported += tileStore.addTiles(Integer.parseInt(region), groundMarkerTiles);
+                } catch (RuntimeException e) {
+                    log.warn("Skipping malformed Ground Marker region {}", region, e);
+                }
+            }
+            listener.progress(i + 1, groundMarkerRegions.size());
+        }
+        return imported;
     }
 
-    private Collection<TilemanModeTile> getTiles(String regionId) {
-        return getConfiguration(CONFIG_GROUP, REGION_PREFIX + regionId);
+    /**
+     * Recounts every unlocked tile in the index. Only needed when the index is (re)loaded, as marking and
+     * unmarking keep {@link #totalTilesUsed} up to date as they go.
+     */
+    private void recountTiles() {
+        updateTotalTilesUsed(tileStore.countTiles());
+        updateTileCounter();
     }
 
-    private void updateTileCounter() {
-        List<String> regions = configManager.getConfigurationKeys(CONFIG_GROUP + ".region");
-        int totalTiles = 0;
-        for (String region : regions) {
-            Collection<TilemanModeTile> regionTiles = getTiles(removeRegionPrefix(region));
+    void updateTileCounter() {
+        final long start = profiler.start(TilemanModeProfiler.Section.UPDATE_TILE_COUNTER);
+        try {
+            log.debug("Updating tile counter");
 
-            totalTiles += regionTiles.size();
+            updateRemainingTiles(totalTilesUsed);
+            updateXpUntilNextTile();
+        } finally {
+            profiler.stop(TilemanModeProfiler.Section.UPDATE_TILE_COUNTER, start);
         }
-
-        log.debug("Updating tile counter");
-
-        updateTotalTilesUsed(totalTiles);
-        updateRemainingTiles(totalTiles);
-        updateXpUntilNextTile();
     }
 
     private void updateTotalTilesUsed(int totalTilesCount) {
@@ -380,58 +673,155 @@ public class TilemanModePlugin extends Plugin {
         xpUntilNextTile = config.expPerTile() - Integer.parseInt(Long.toString(client.getOverallExperience() % config.expPerTile()));
     }
 
-    private Collection<TilemanModeTile> getConfiguration(String configGroup, String key) {
-        String json = configManager.getConfiguration(configGroup, key);
-
-        if (Strings.isNullOrEmpty(json)) {
-            return Collections.emptyList();
+    /**
+     * Rebuilds {@link #sceneGrid} from scratch. Only needed when the scene changes; marking and unmarking a tile
+     * update the grid in place.
+     *
+     * The grid is built on the background worker from a snapshot of the scene's position, and of its instance
+     * templates when in an instance, and published on the client thread with any tiles marked in the meantime
+     * replayed over it.
+     */
+    void loadPoints() {
+        final long start = profiler.start(TilemanModeProfiler.Section.LOAD_POINTS);
+        try {
+            scheduleSceneRebuild();
+        } finally {
+            profiler.stop(TilemanModeProfiler.Section.LOAD_POINTS, start);
         }
-
-        return GSON.fromJson(json, new TypeToken<List<TilemanModeTile>>() {
-        }.getType());
     }
 
-    private void loadPoints() {
-        points.clear();
+    private void scheduleSceneRebuild() {
+        final int generation = ++sceneGeneration;
+        sceneChanges.clear();
+        rebuildingScene = false;
+        updateTileCounter();
 
-        int[] regions = client.getMapRegions();
+        final boolean wasInstance = instanceMap != null;
+        instanceMap = client.isInInstancedRegion() ? new TilemanModeInstanceMap(client.getInstanceTemplateChunks()) : null;
+        final int[] regions = client.getMapRegions();
+        final int baseX = client.getBaseX();
+        final int baseY = client.getBaseY();
 
+        // Until the rebuilt grid is published, keep drawing the last one moved to where its tiles are in this scene.
+        // Instances are laid out in their own coordinates, so their tiles can't be carried into or out of one.
+        if (regions == null || wasInstance || instanceMap != null) {
+            sceneGrid.clear();
+        } else {
+            sceneGrid.translate(sceneGridBaseX - baseX, sceneGridBaseY - baseY);
+        }
+        sceneGridBaseX = baseX;
+        sceneGridBaseY = baseY;
         if (regions == null) {
             return;
         }
 
-        for (int regionId : regions) {
-            // load points for region
-            log.debug("Loading points for region {}", regionId);
-            Collection<WorldPoint> worldPoint = translateToWorldPoint(getTiles(regionId));
-            points.addAll(worldPoint);
+        final TilemanModeInstanceMap instance = instanceMap;
+        final int[] regionIds = regions.clone();
+        rebuildingScene = true;
+        worker.submit("scene rebuild", () -> instance != null ? buildInstanceGrid(instance) : buildSceneGrid(regionIds, baseX, baseY), grid -> {
+            if (generation != sceneGeneration) {
+                return;
+            }
+            sceneGrid.copyFrom(grid);
+            for (int change : sceneChanges) {
+                applySceneChange(change);
+            }
+            sceneChanges.clear();
+            rebuildingScene = false;
+        });
+    }
+
+    /**
+     * Builds the grid of a scene outside an instance straight from the region bitmaps. Safe to call off the client
+     * thread, as it only reads the tile store.
+     */
+    TilemanModeSceneGrid buildSceneGrid(int[] regionIds, int baseX, int baseY) {
+        final long start = profiler.start(TilemanModeProfiler.Section.SCENE_REBUILD);
+        try {
+            TilemanModeSceneGrid grid = new TilemanModeSceneGrid();
+            long[] rows = new long[TilemanModeRegion.REGION_SIZE];
+            for (int regionId : regionIds) {
+                int sceneX = ((regionId >>> 8) << 6) - baseX;
+                int sceneY = ((regionId & 0xFF) << 6) - baseY;
+                for (int plane = 0; plane < TilemanModeRegion.PLANES; plane++) {
+                    if (tileStore.copyPlane(regionId, plane, rows) == 0) {
+                        break;
+                    }
+                    for (int y = 0; y < rows.length; y++) {
+                        for (long row = rows[y]; row != 0; row &= row - 1) {
+                            grid.add(plane, sceneX + Long.numberOfTrailingZeros(row), sceneY + y);
+                        }
+                    }
+                }
+            }
+            return grid;
+        } finally {
+            profiler.stop(TilemanModeProfiler.Section.SCENE_REBUILD, start);
+        }
+    }
+
+    /**
+     * Builds the grid of an instance from the bitmaps of the regions its chunks are copied from. Safe to call off the
+     * client thread, as it only reads the tile store and the instance map.
+     */
+    TilemanModeSceneGrid buildInstanceGrid(TilemanModeInstanceMap instance) {
+        final long start = profiler.start(TilemanModeProfiler.Section.SCENE_REBUILD);
+        try {
+            TilemanModeSceneGrid grid = new TilemanModeSceneGrid();
+            long[] rows = new long[TilemanModeRegion.REGION_SIZE];
+            for (int regionId : instance.getRegionIds()) {
+                log.debug("Loading points for region {}", regionId);
+                for (int plane = 0; plane < TilemanModeRegion.PLANES; plane++) {
+                    if (tileStore.copyPlane(regionId, plane, rows) == 0) {
+                        break;
+                    }
+                    instance.addToGrid(regionId, plane, rows, grid);
+                }
+            }
+            return grid;
+        } finally {
+            profiler.stop(TilemanModeProfiler.Section.SCENE_REBUILD, start);
         }
-        updateTileCounter();
     }
 
-    private void savePoints(int regionId, Collection<TilemanModeTile> points) {
-        if (points == null || points.isEmpty()) {
-            configManager.unsetConfiguration(CONFIG_GROUP, REGION_PREFIX + regionId);
-            return;
-        }
+    private void addToScene(WorldPoint worldPoint) {
+        sceneGrid.add(worldPoint.getPlane(), worldPoint.getX() - client.getBaseX(), worldPoint.getY() - client.getBaseY());
+    }
+
+    private void removeFromScene(WorldPoint worldPoint) {
+        sceneGrid.remove(worldPoint.getPlane(), worldPoint.getX() - client.getBaseX(), worldPoint.getY() - client.getBaseY());
+    }
 
-        String json = GSON.toJson(points);
-        configManager.setConfiguration(CONFIG_GROUP, REGION_PREFIX + regionId, json);
+    private void updateScene(WorldPoint worldPoint, boolean marked) {
+        if (marked) {
+            addToScene(worldPoint);
+        } else {
+            removeFromScene(worldPoint);
+        }
+        int sceneX = worldPoint.getX() - client.getBaseX();
+        int sceneY = worldPoint.getY() - client.getBaseY();
+        if (rebuildingScene && sceneX >= 0 && sceneX < TilemanModeSceneGrid.SCENE_SIZE
+                && sceneY >= 0 && sceneY < TilemanModeSceneGrid.SCENE_SIZE) {
+            sceneChanges.add((marked ? 1 << 24 : 0) | (worldPoint.getPlane() & 0xFF) << 16 | sceneX << 8 | sceneY);
+        }
     }
 
-    private Collection<WorldPoint> translateToWorldPoint(Collection<TilemanModeTile> points) {
-        if (points.isEmpty()) {
-            return Collections.emptyList();
+    private void applySceneChange(int change) {
+        int plane = change >> 16 & 0xFF;
+        int sceneX = change >> 8 & 0xFF;
+        int sceneY = change & 0xFF;
+        if ((change & 1 << 24) != 0) {
+            sceneGrid.add(plane, sceneX, sceneY);
+        } else {
+            sceneGrid.remove(plane, sceneX, sceneY);
         }
+    }
 
-        return points.stream()
-                .map(point -> WorldPoint.fromRegion(point.getRegionId(), point.getRegionX(), point.getRegionY(), point.getZ()))
-                .flatMap(worldPoint ->
-                {
-                    final Collection<WorldPoint> localWorldPoints = WorldPoint.toLocalInstance(client, worldPoint);
-                    return localWorldPoints.stream();
-                })
-                .collect(Collectors.toList());
+    private Collection<WorldPoint> translateToWorldPoint(TilemanModeTile point) {
+        if (instanceMap != null) {
+            return instanceMap.toScene(point, client.getBaseX(), client.getBaseY());
+        }
+        return Collections.singletonList(WorldPoint.fromRegion(point.getRegionId(), point.getRegionX(), point.getRegionY(), point.getZ()));
     }
 
     int getTotalTiles() {
@@ -456,172 +846,29 @@ public class TilemanModePlugin extends Plugin {
             return;
         }
 
-        // Mark the tile they walked to
-        updateTileMark(currentPlayerPoint, true);
-
-        // If player moves 2 tiles in a straight line, fill in the middle tile
-        // TODO Fill path between last point and current point. This will fix missing tiles that occur when you lag
-        // TODO   and rendered frames are skipped. See if RL has an api that mimic's OSRS's pathing. If so, use that to
-        // TODO   set all tiles between current tile and lastTile as marked
-        if(lastTile != null){
-            int xDiff = currentPlayerPoint.getX() - lastTile.getX();
-            int yDiff = currentPlayerPoint.getY() - lastTile.getY();
-            int yModifier = yDiff / 2;
-            int xModifier = xDiff / 2;
-
-            switch(lastTile.distanceTo(currentPlayerPoint)) {
-                case 0: // Haven't moved
-                case 128: // Moved 1 tile
-                    return;
-                case 181: // Moved 1 tile diagonally
-                    handleCornerMovement(xDiff, yDiff);
-                    break;
-                case 256: // Moved 2 tiles straight
-                case 362: // Moved 2 tiles diagonally
-                    fillTile(new LocalPoint(lastTile.getX() + xModifier, lastTile.getY() + yModifier));
-                    break;
-                case 286: // Moved in an 'L' shape
-                    handleLMovement(xDiff, yDiff);
-                    break;
-            }
-        }
+        refreshCollisionMap();
+        autoMarker.walkedTo(lastTile, lastPlane, currentPlayerPoint, client.getPlane(), autoMarkTile);
     }
 
-    private void handleLMovement(int xDiff, int yDiff) {
-        int xModifier = xDiff / 2;
-        int yModifier = yDiff / 2;
-        int tileBesideXDiff, tileBesideYDiff;
-
-        // Whichever direction has moved only one, keep it 0. This is the translation to the potential 'problem' gameObject
-        if (Math.abs(yDiff) == 128) {
-            tileBesideXDiff = xDiff;
-            tileBesideYDiff = 0;
-        } else {
-            tileBesideXDiff = 0;
-            tileBesideYDiff = yDiff;
+    /**
+     * Re-copies any plane of the collision snapshot whose collision changed since it was taken.
+     */
+    private void refreshCollisionMap() {
+        if (collisionMap.isDirty()) {
+            collisionMap.snapshot(client.getCollisionMaps());
         }
-
-        MovementFlag[] tileBesideFlagsArray = getTileMovementFlags(lastTile.getX() + tileBesideXDiff, lastTile.getY() + tileBesideYDiff);
-
-        if (tileBesideFlagsArray.length == 0) {
-            fillTile(new LocalPoint(lastTile.getX() + tileBesideXDiff / 2, lastTile.getY() + tileBesideYDiff / 2));
-        } else if (containsAnyOf(fullBlock, tileBesideFlagsArray)) {
-            if (yModifier == 64) {
-                yModifier = 128;
-            } else if (xModifier == 64) {
-                xModifier = 128;
-            }
-            fillTile(new LocalPoint(lastTile.getX() + xModifier, lastTile.getY() + yModifier));
-        } else if (containsAnyOf(allDirections, tileBesideFlagsArray)){
-            MovementFlag direction1, direction2;
-            if (yDiff == 256 || yDiff == -128) {
-                // Moving 2 North or 1 South
-                direction1 = MovementFlag.BLOCK_MOVEMENT_SOUTH;
-            } else {
-                // Moving 2 South or 1 North
-                direction1 = MovementFlag.BLOCK_MOVEMENT_NORTH;
-            }
-            if (xDiff == 256 || xDiff == -128) {
-                // Moving 2 East or 1 West
-                direction2 = MovementFlag.BLOCK_MOVEMENT_WEST;
-            } else {
-                // Moving 2 West or 1 East
-                direction2 = MovementFlag.BLOCK_MOVEMENT_EAST;
-            }
-
-            if (containsAnyOf(tileBesideFlagsArray, new MovementFlag[]{direction1, direction2})) {
-                // Interrupted
-                if (yModifier == 64) {
-                    yModifier = 128;
-                } else if (xModifier == 64) {
-                    xModifier = 128;
-                }
-                fillTile(new LocalPoint(lastTile.getX() + xModifier, lastTile.getY() + yModifier));
-            } else {
-                // Normal Pathing
-                fillTile(new LocalPoint(lastTile.getX() + tileBesideXDiff / 2, lastTile.getY() + tileBesideYDiff / 2));
-            }
-        }
-    }
-
-    private void handleCornerMovement(int xDiff, int yDiff) {
-        LocalPoint northPoint;
-        LocalPoint southPoint;
-        if(yDiff > 0) {
-            northPoint = new LocalPoint(lastTile.getX(), lastTile.getY() + yDiff);
-            southPoint = new LocalPoint(lastTile.getX() + xDiff, lastTile.getY());
-        } else {
-            northPoint = new LocalPoint(lastTile.getX() + xDiff, lastTile.getY());
-            southPoint = new LocalPoint(lastTile.getX(), lastTile.getY() + yDiff);
-        }
-
-        MovementFlag[] northTile = getTileMovementFlags(northPoint);
-        MovementFlag[] southTile = getTileMovementFlags(southPoint);
-
-        if (xDiff + yDiff == 0) {
-            // Diagonal tilts north west
-            if(containsAnyOf(fullBlock, northTile)
-                    || containsAnyOf(northTile, new MovementFlag[]{MovementFlag.BLOCK_MOVEMENT_SOUTH, MovementFlag.BLOCK_MOVEMENT_WEST})){
-                fillTile(southPoint);
-            } else if (containsAnyOf(fullBlock, southTile)
-                    || containsAnyOf(southTile, new MovementFlag[]{MovementFlag.BLOCK_MOVEMENT_NORTH, MovementFlag.BLOCK_MOVEMENT_EAST})){
-                fillTile(northPoint);
-            }
-        } else {
-            // Diagonal tilts north east
-            if(containsAnyOf(fullBlock, northTile)
-                    || containsAnyOf(northTile, new MovementFlag[]{MovementFlag.BLOCK_MOVEMENT_SOUTH, MovementFlag.BLOCK_MOVEMENT_EAST})){
-                fillTile(southPoint);
-            } else if (containsAnyOf(fullBlock, southTile)
-                    || containsAnyOf(southTile, new MovementFlag[]{MovementFlag.BLOCK_MOVEMENT_NORTH, MovementFlag.BLOCK_MOVEMENT_WEST})){
-                fillTile(northPoint);
-            }
-        }
-    }
-
-    private MovementFlag[] getTileMovementFlags(int x, int y) {
-        LocalPoint pointBeside = new LocalPoint(x, y);
-
-        CollisionData[] collisionData = client.getCollisionMaps();
-        assert collisionData != null;
-        int[][] collisionDataFlags = collisionData[client.getPlane()].getFlags();
-
-        Set<MovementFlag> tilesBesideFlagsSet = MovementFlag.getSetFlags(collisionDataFlags[pointBeside.getSceneX()][pointBeside.getSceneY()]);
-        MovementFlag[] tileBesideFlagsArray = new MovementFlag[tilesBesideFlagsSet.size()];
-        tilesBesideFlagsSet.toArray(tileBesideFlagsArray);
-
-        return tileBesideFlagsArray;
-    }
-
-    private MovementFlag[] getTileMovementFlags(LocalPoint localPoint) {
-        return  getTileMovementFlags(localPoint.getX(), localPoint.getY());
-    }
-
-    private boolean containsAnyOf(MovementFlag[] comparisonFlags, MovementFlag[] flagsToCompare) {
-        if (comparisonFlags.length == 0 || flagsToCompare.length == 0) {
-            return false;
-        }
-        for (MovementFlag flag : flagsToCompare) {
-            if (Arrays.asList(comparisonFlags).contains(flag)) {
-                return true;
-            }
-        }
-        return false;
     }
 
     private boolean regionIsOnTutorialIsland(int regionId) {
         return tutorialIslandRegionIds.contains(regionId);
     }
 
-    private void fillTile(LocalPoint localPoint){
-        if(lastPlane != client.getPlane()) {
+    void updateTileMark(LocalPoint localPoint, boolean markedValue) {
+        if (loading) {
             return;
         }
-        updateTileMark(localPoint, true);
-    }
-
-    private void updateTileMark(LocalPoint localPoint, boolean markedValue) {
-        if(containsAnyOf(getTileMovementFlags(localPoint), fullBlock)) {
+        refreshCollisionMap();
+        if (TilemanModeMovement.isFullyBlocked(autoMarker.getTileFlags(client.getPlane(), localPoint.getX(), localPoint.getY()))) {
             return;
         }
 
@@ -631,54 +878,45 @@ public class TilemanModePlugin extends Plugin {
         TilemanModeTile point = new TilemanModeTile(regionId, worldPoint.getRegionX(), worldPoint.getRegionY(), client.getPlane());
         log.debug("Updating point: {} - {}", point, worldPoint);
 
-        List<TilemanModeTile> tilemanModeTiles = new ArrayList<>(getTiles(regionId));
-
         if (markedValue) {
             // Try add tile
-            if (!tilemanModeTiles.contains(point) && (config.allowTileDeficit() || remainingTiles > 0)) {
-                tilemanModeTiles.add(point);
+            if ((config.allowTileDeficit() || remainingTiles > 0) && tileStore.addTile(point)) {
+                totalTilesUsed++;
+                remainingTiles--;
+                translateToWorldPoint(point).forEach(worldPoint -> updateScene(worldPoint, true));
             }
         } else {
             // Try remove tile
-            tilemanModeTiles.remove(point);
+            if (tileStore.removeTile(point)) {
+                totalTilesUsed--;
+                remainingTiles++;
+                translateToWorldPoint(point).forEach(worldPoint -> updateScene(worldPoint, false));
+            }
         }
+    }
 
-        savePoints(regionId, tilemanModeTiles);
-        loadPoints();
+    /**
+     * Reverts the latest tile marked or unmarked, by hand or by walking.
+     */
+    private void undoTileMark() {
+        if (loading) {
+            return;
+        }
+        int change = tileStore.undo();
+        if (change == TilemanModeJournal.NONE) {
+            return;
+        }
+
+        TilemanModeTile point = TilemanModeJournal.unpackTile(change);
+        boolean marked = !TilemanModeJournal.isMarked(change);
+        log.debug("Undoing point: {}", point);
+        totalTilesUsed += marked ? 1 : -1;
+        remainingTiles -= marked ? 1 : -1;
+        translateToWorldPoint(point).forEach(worldPoint -> updateScene(worldPoint, marked));
     }
 
     int getXpUntilNextTile() {
         return xpUntilNextTile;
     }
 
-    @AllArgsConstructor
-    enum MovementFlag {
-        BLOCK_MOVEMENT_NORTH_WEST(CollisionDataFlag.BLOCK_MOVEMENT_NORTH_WEST),
-        BLOCK_MOVEMENT_NORTH(CollisionDataFlag.BLOCK_MOVEMENT_NORTH),
-        BLOCK_MOVEMENT_NORTH_EAST(CollisionDataFlag.BLOCK_MOVEMENT_NORTH_EAST),
-        BLOCK_MOVEMENT_EAST(CollisionDataFlag.BLOCK_MOVEMENT_EAST),
-        BLOCK_MOVEMENT_SOUTH_EAST(CollisionDataFlag.BLOCK_MOVEMENT_SOUTH_EAST),
-        BLOCK_MOVEMENT_SOUTH(CollisionDataFlag.BLOCK_MOVEMENT_SOUTH),
-        BLOCK_MOVEMENT_SOUTH_WEST(CollisionDataFlag.BLOCK_MOVEMENT_SOUTH_WEST),
-        BLOCK_MOVEMENT_WEST(CollisionDataFlag.BLOCK_MOVEMENT_WEST),
-
-        BLOCK_MOVEMENT_OBJECT(CollisionDataFlag.BLOCK_MOVEMENT_OBJECT),
-        BLOCK_MOVEMENT_FLOOR_DECORATION(CollisionDataFlag.BLOCK_MOVEMENT_FLOOR_DECORATION),
-        BLOCK_MOVEMENT_FLOOR(CollisionDataFlag.BLOCK_MOVEMENT_FLOOR),
-        BLOCK_MOVEMENT_FULL(CollisionDataFlag.BLOCK_MOVEMENT_FULL);
-
-        @Getter
-        private int flag;
-
-        /**
-         * @param collisionData The tile collision flags.
-         * @return The set of {@link MovementFlag}s that have been set.
-         */
-        public static Set<MovementFlag> getSetFlags(int collisionData) {
-            return Arrays.stream(values())
-                    .filter(movementFlag -> (movementFlag.flag & collisionData) != 0)
-                    .collect(Collectors.toSet());
-        }
-    }
-
 }
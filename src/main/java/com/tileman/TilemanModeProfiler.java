@@ -0,0 +1,248 @@
+package com.tileman;
+
+import lombok.Getter;
+import lombok.Value;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * Optional timing of the plugin's hot paths, shown by {@link TilemanModeDiagnosticsOverlay}.
+ *
+ * Each {@link Section} keeps a log-linear histogram of call durations, good to within an eighth of the value,
+ * so recording a timing is a couple of array writes. Stats cover rolling windows of
+ * {@link #WINDOW_SECONDS}; the overlay shows the last complete window so a stutter stays on screen long enough to
+ * read. Bytes allocated per call are counted too where the JVM supports per-thread allocation counters, less
+ * whatever reading the counter allocates itself.
+ *
+ * While disabled, {@link #start(Section)} and {@link #stop(Section, long)} only read a volatile flag.
+ */
+@Singleton
+class TilemanModeProfiler {
+    static final int WINDOW_SECONDS = 10;
+
+    private static final long WINDOW_NANOS = WINDOW_SECONDS * 1_000_000_000L;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = Long.SIZE * SUB_BUCKETS;
+
+    enum Section {
+        GAME_TICK("Game tick"),
+        MENU_ENTRY_ADDED("Menu entry"),
+        LOAD_POINTS("Load points"),
+        SCENE_REBUILD("Scene rebuild"),
+        SAVE_TILES("Save tiles"),
+        UPDATE_TILE_COUNTER("Tile counter"),
+        SCENE_OVERLAY("Scene overlay"),
+        MINIMAP_OVERLAY("Minimap overlay"),
+        WORLD_MAP_OVERLAY("World map overlay"),
+        INFO_OVERLAY("Info overlay");
+
+        @Getter
+        private final String name;
+
+        Section(String name) {
+            this.name = name;
+        }
+    }
+
+    @Value
+    static class Stats {
+        long calls;
+        long p50Nanos;
+        long p99Nanos;
+        long maxNanos;
+        // Mean bytes allocated per call, or -1 if allocations can't be counted
+        long allocatedBytes;
+    }
+
+    private final SectionStats[] sections = new SectionStats[Section.values().length];
+    private final com.sun.management.ThreadMXBean allocationCounter;
+    // Bytes a pair of counter reads allocate by themselves, on JVMs where reading it isn't free
+    private final long allocationOverhead;
+    private volatile boolean enabled;
+
+    @Inject
+    TilemanModeProfiler() {
+        for (int i = 0; i < sections.length; i++) {
+            sections[i] = new SectionStats();
+        }
+        allocationCounter = getAllocationCounter();
+        allocationOverhead = measureAllocationOverhead();
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns timing on or off, dropping everything recorded so far when it is turned on.
+     */
+    void setEnabled(boolean enabled) {
+        if (enabled && !this.enabled) {
+            for (SectionStats section : sections) {
+                section.reset(System.nanoTime());
+            }
+        }
+        this.enabled = enabled;
+    }
+
+    /**
+     * Starts timing a call. A section must only be timed from one thread at a time.
+     * @return the token to pass to {@link #stop(Section, long)}, or 0 if timing is off.
+     */
+    long start(Section section) {
+        if (!enabled) {
+            return 0;
+        }
+        if (allocationCounter != null) {
+            sections[section.ordinal()].allocatedAtStart = getAllocatedBytes();
+        }
+        return System.nanoTime();
+    }
+
+    void stop(Section section, long start) {
+        if (start == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        SectionStats stats = sections[section.ordinal()];
+        long allocated = allocationCounter == null ? 0
+                : Math.max(getAllocatedBytes() - stats.allocatedAtStart - allocationOverhead, 0);
+        stats.record(now, now - start, allocated);
+    }
+
+    /**
+     * @return the stats of the last complete window, or of the current one if none has completed yet.
+     */
+    Stats getStats(Section section) {
+        return sections[section.ordinal()].getStats(System.nanoTime(), allocationCounter != null);
+    }
+
+    private long getAllocatedBytes() {
+        return allocationCounter.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private long measureAllocationOverhead() {
+        if (allocationCounter == null) {
+            return 0;
+        }
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < 8; i++) {
+            long start = getAllocatedBytes();
+            overhead = Math.min(overhead, getAllocatedBytes() - start);
+        }
+        return overhead;
+    }
+
+    private static com.sun.management.ThreadMXBean getAllocationCounter() {
+        try {
+            ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+            if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threadMXBean;
+                if (counter.isThreadAllocatedMemorySupported() && counter.isThreadAllocatedMemoryEnabled()) {
+                    return counter;
+                }
+            }
+        } catch (LinkageError | RuntimeException e) {
+            // Not a HotSpot JVM, so there are only timings
+        }
+        return null;
+    }
+
+    private static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) Math.max(nanos, 0);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the smallest duration that falls into the bucket.
+     */
+    private static long bucketValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - 1);
+    }
+
+    private static class Histogram {
+        final int[] counts = new int[BUCKETS];
+        long calls;
+        long max;
+        long allocated;
+
+        void clear() {
+            Arrays.fill(counts, 0);
+            calls = 0;
+            max = 0;
+            allocated = 0;
+        }
+
+        long percentile(double percentile) {
+            long rank = (long) Math.ceil(calls * percentile);
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                seen += counts[bucket];
+                if (seen >= rank) {
+                    return Math.min(bucketValue(bucket), max);
+                }
+            }
+            return max;
+        }
+    }
+
+    private static class SectionStats {
+        private Histogram current = new Histogram();
+        private Histogram previous = new Histogram();
+        private long windowStart;
+        long allocatedAtStart;
+
+        synchronized void reset(long now) {
+            current.clear();
+            previous.clear();
+            windowStart = now;
+        }
+
+        synchronized void record(long now, long nanos, long allocated) {
+            rotate(now);
+            current.counts[bucket(nanos)]++;
+            current.calls++;
+            current.max = Math.max(current.max, nanos);
+            current.allocated += allocated;
+        }
+
+        synchronized Stats getStats(long now, boolean countsAllocations) {
+            rotate(now);
+            Histogram histogram = previous.calls > 0 ? previous : current;
+            if (histogram.calls == 0) {
+                return new Stats(0, 0, 0, 0, countsAllocations ? 0 : -1);
+            }
+            return new Stats(histogram.calls, histogram.percentile(0.5), histogram.percentile(0.99), histogram.max,
+                    countsAllocations ? histogram.allocated / histogram.calls : -1);
+        }
+
+        private void rotate(long now) {
+            long elapsed = now - windowStart;
+            if (elapsed < WINDOW_NANOS) {
+                return;
+            }
+            Histogram completed = current;
+            current = previous;
+            previous = completed;
+            current.clear();
+            if (elapsed >= 2 * WINDOW_NANOS) {
+                // The section went unused for a whole window, so what it last recorded is out of date
+                previous.clear();
+            }
+            windowStart = now;
+        }
+    }
+}
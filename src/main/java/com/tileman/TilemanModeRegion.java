@@ -0,0 +1,132 @@
+package com.tileman;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bitmap of the unlocked tiles of a single 64x64 map region across all four planes.
+ * Each row of 64 tiles is packed into one long, so a full region takes 2 KB.
+ */
+class TilemanModeRegion {
+    static final int REGION_SIZE = 64;
+    static final int PLANES = 4;
+
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    @Getter
+    private final int regionId;
+
+    // Indexed by plane * REGION_SIZE + regionY, bit regionX
+    private final long[] rows = new long[PLANES * REGION_SIZE];
+    private int size;
+
+    // Stamped from a shared counter on every change, so cached copies of any region can tell when they are stale
+    @Getter
+    private long version = VERSIONS.incrementAndGet();
+
+    TilemanModeRegion(int regionId) {
+        this.regionId = regionId;
+    }
+
+    static long nextVersion() {
+        return VERSIONS.incrementAndGet();
+    }
+
+    /**
+     * Gives a region decoded again the version it had before, as its tiles are the same.
+     */
+    void restoreVersion(long version) {
+        this.version = version;
+    }
+
+    boolean contains(int regionX, int regionY, int plane) {
+        return (rows[rowIndex(regionY, plane)] & (1L << regionX)) != 0;
+    }
+
+    /**
+     * @return true if the tile was not already unlocked.
+     */
+    boolean add(int regionX, int regionY, int plane) {
+        int row = rowIndex(regionY, plane);
+        long bit = 1L << regionX;
+        if ((rows[row] & bit) != 0) {
+            return false;
+        }
+        rows[row] |= bit;
+        size++;
+        version = VERSIONS.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * @return true if the tile was unlocked.
+     */
+    boolean remove(int regionX, int regionY, int plane) {
+        int row = rowIndex(regionY, plane);
+        long bit = 1L << regionX;
+        if ((rows[row] & bit) == 0) {
+            return false;
+        }
+        rows[row] &= ~bit;
+        size--;
+        version = VERSIONS.incrementAndGet();
+        return true;
+    }
+
+    long getRow(int regionY, int plane) {
+        return rows[rowIndex(regionY, plane)];
+    }
+
+    /**
+     * Unlocks every tile set in {@code bits} on the given row.
+     * @return the number of newly unlocked tiles.
+     */
+    int addRow(int regionY, int plane, long bits) {
+        int row = rowIndex(regionY, plane);
+        int added = Long.bitCount(bits & ~rows[row]);
+        if (added > 0) {
+            rows[row] |= bits;
+            size += added;
+            version = VERSIONS.incrementAndGet();
+        }
+        return added;
+    }
+
+    int size(int plane) {
+        int count = 0;
+        for (int y = 0; y < REGION_SIZE; y++) {
+            count += Long.bitCount(rows[rowIndex(y, plane)]);
+        }
+        return count;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    List<TilemanModeTile> getTiles() {
+        List<TilemanModeTile> tiles = new ArrayList<>(size);
+        for (int plane = 0; plane < PLANES; plane++) {
+            for (int y = 0; y < REGION_SIZE; y++) {
+                long row = rows[rowIndex(y, plane)];
+                while (row != 0) {
+                    int x = Long.numberOfTrailingZeros(row);
+                    tiles.add(new TilemanModeTile(regionId, x, y, plane));
+                    row &= row - 1;
+                }
+            }
+        }
+        return tiles;
+    }
+
+    private static int rowIndex(int regionY, int plane) {
+        return plane * REGION_SIZE + regionY;
+    }
+}
@@ -0,0 +1,190 @@
+package com.tileman;
+
+import com.google.common.base.Strings;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Encodes a {@link TilemanModeRegion} as a compact base64 string for the config.
+ *
+ * The payload starts with a byte holding a bit per non-empty plane. Each of those planes then follows as either
+ * a raw 512 byte bitmap, or as a varint count and varint gaps between tile indices, whichever is smaller.
+ * Values written before this format are JSON lists of {@link TilemanModeTile} and are still decoded.
+ */
+final class TilemanModeRegionCodec {
+    static final String PREFIX = "b64:";
+
+    private static final int PLANE_BITMAP = 0;
+    private static final int PLANE_SPARSE = 1;
+    private static final int BITMAP_BYTES = TilemanModeRegion.REGION_SIZE * Long.BYTES;
+
+    private static final Gson GSON = new Gson();
+
+    private TilemanModeRegionCodec() {
+    }
+
+    static boolean isLegacy(String value) {
+        return !value.startsWith(PREFIX);
+    }
+
+    static String encode(TilemanModeRegion region) {
+        return PREFIX + Base64.getEncoder().encodeToString(encodeBytes(region));
+    }
+
+    /**
+     * Encodes the region without the base64 wrapping used in the config, for {@link TilemanModeTileFile}.
+     */
+    static byte[] encodeBytes(TilemanModeRegion region) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int planeMask = 0;
+        for (int plane = 0; plane < TilemanModeRegion.PLANES; plane++) {
+            if (region.size(plane) > 0) {
+                planeMask |= 1 << plane;
+            }
+        }
+        out.write(planeMask);
+
+        for (int plane = 0; plane < TilemanModeRegion.PLANES; plane++) {
+            if ((planeMask & (1 << plane)) == 0) {
+                continue;
+            }
+
+            byte[] sparse = encodeSparse(region, plane);
+            if (sparse.length < BITMAP_BYTES) {
+                out.write(PLANE_SPARSE);
+                out.write(sparse, 0, sparse.length);
+            } else {
+                ByteBuffer bitmap = ByteBuffer.allocate(BITMAP_BYTES);
+                for (int y = 0; y < TilemanModeRegion.REGION_SIZE; y++) {
+                    bitmap.putLong(region.getRow(y, plane));
+                }
+                out.write(PLANE_BITMAP);
+                out.write(bitmap.array(), 0, BITMAP_BYTES);
+            }
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a region value in either the compact or the legacy JSON format.
+     * @throws IllegalArgumentException if the value is malformed.
+     */
+    static TilemanModeRegion decode(int regionId, String value) {
+        if (Strings.isNullOrEmpty(value)) {
+            return new TilemanModeRegion(regionId);
+        }
+
+        if (isLegacy(value)) {
+            TilemanModeRegion region = new TilemanModeRegion(regionId);
+            for (TilemanModeTile tile : decodeJson(value)) {
+                region.add(tile.getRegionX(), tile.getRegionY(), tile.getZ());
+            }
+            return region;
+        }
+
+        return decodeBytes(regionId, ByteBuffer.wrap(Base64.getDecoder().decode(value.substring(PREFIX.length()))));
+    }
+
+    /**
+     * Decodes a region written by {@link #encodeBytes(TilemanModeRegion)}, reading exactly its bytes from {@code in}.
+     * @throws IllegalArgumentException if the region is malformed.
+     */
+    static TilemanModeRegion decodeBytes(int regionId, ByteBuffer in) {
+        TilemanModeRegion region = new TilemanModeRegion(regionId);
+        try {
+            int planeMask = in.get();
+            if ((planeMask & ~((1 << TilemanModeRegion.PLANES) - 1)) != 0) {
+                throw new IllegalArgumentException("Unknown planes in mask " + planeMask);
+            }
+            for (int plane = 0; plane < TilemanModeRegion.PLANES; plane++) {
+                if ((planeMask & (1 << plane)) == 0) {
+                    continue;
+                }
+
+                int encoding = in.get();
+                if (encoding == PLANE_BITMAP) {
+                    for (int y = 0; y < TilemanModeRegion.REGION_SIZE; y++) {
+                        region.addRow(y, plane, in.getLong());
+                    }
+                } else if (encoding == PLANE_SPARSE) {
+                    int count = readVarInt(in);
+                    int index = -1;
+                    for (int i = 0; i < count; i++) {
+                        index += readVarInt(in) + 1;
+                        // Checked before adding, as a row past the end of the plane is a row of the next one
+                        if (index < 0 || index >= TilemanModeRegion.REGION_SIZE * TilemanModeRegion.REGION_SIZE) {
+                            throw new IllegalArgumentException("Tile index " + index + " is outside the region");
+                        }
+                        region.add(index & (TilemanModeRegion.REGION_SIZE - 1), index >> 6, plane);
+                    }
+                } else {
+                    throw new IllegalArgumentException("Unknown plane encoding " + encoding);
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Malformed region " + regionId, e);
+        }
+        return region;
+    }
+
+    /**
+     * Decodes a legacy JSON tile list, as still written by the Ground Marker plugin.
+     */
+    static Collection<TilemanModeTile> decodeJson(String json) {
+        if (Strings.isNullOrEmpty(json)) {
+            return Collections.emptyList();
+        }
+
+        List<TilemanModeTile> tiles = GSON.fromJson(json, new TypeToken<List<TilemanModeTile>>() {
+        }.getType());
+        return tiles == null ? Collections.emptyList() : tiles;
+    }
+
+    private static byte[] encodeSparse(TilemanModeRegion region, int plane) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarInt(out, region.size(plane));
+        int previous = -1;
+        for (int y = 0; y < TilemanModeRegion.REGION_SIZE; y++) {
+            long row = region.getRow(y, plane);
+            while (row != 0) {
+                int index = (y << 6) | Long.numberOfTrailingZeros(row);
+                writeVarInt(out, index - previous - 1);
+                previous = index;
+                row &= row - 1;
+            }
+            // Bail out early once the sparse form can no longer win
+            if (out.size() >= BITMAP_BYTES) {
+                break;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+}
@@ -0,0 +1,126 @@
+package com.tileman;
+
+import lombok.Getter;
+import net.runelite.api.Constants;
+
+import java.util.Arrays;
+
+/**
+ * Unlocked tiles of the currently loaded scene, packed into one bitset per plane and indexed by scene coordinates,
+ * so overlays can test just the tiles around the player instead of walking every loaded tile.
+ */
+class TilemanModeSceneGrid {
+    static final int SCENE_SIZE = Constants.SCENE_SIZE;
+
+    private static final int WORDS_PER_PLANE = (SCENE_SIZE * SCENE_SIZE + Long.SIZE - 1) / Long.SIZE;
+
+    private final long[][] planes = new long[Constants.MAX_Z][WORDS_PER_PLANE];
+
+    // Tiles added or removed one at a time are logged, so anything derived from the grid can catch up on just those
+    private static final int MAX_LOGGED_CHANGES = 256;
+
+    // Bumped on every change, so anything derived from the grid can tell when it is stale
+    @Getter
+    private int version;
+    // Version of the last change to many tiles at once; each version after it has its tile in the change log
+    @Getter
+    private int bulkVersion;
+    // Packed as plane << 16 | sceneX << 8 | sceneY
+    private final int[] changes = new int[MAX_LOGGED_CHANGES];
+
+    boolean contains(int plane, int sceneX, int sceneY) {
+        if (!inScene(plane, sceneX, sceneY)) {
+            return false;
+        }
+        int index = index(sceneX, sceneY);
+        return (planes[plane][index >> 6] & (1L << index)) != 0;
+    }
+
+    void add(int plane, int sceneX, int sceneY) {
+        if (!inScene(plane, sceneX, sceneY)) {
+            return;
+        }
+        int index = index(sceneX, sceneY);
+        planes[plane][index >> 6] |= 1L << index;
+        logChange(plane, sceneX, sceneY);
+    }
+
+    void remove(int plane, int sceneX, int sceneY) {
+        if (!inScene(plane, sceneX, sceneY)) {
+            return;
+        }
+        int index = index(sceneX, sceneY);
+        planes[plane][index >> 6] &= ~(1L << index);
+        logChange(plane, sceneX, sceneY);
+    }
+
+    /**
+     * @return the tile changed in version {@code bulkVersion + 1 + i}, packed as plane << 16 | sceneX << 8 | sceneY.
+     */
+    int getChange(int i) {
+        return changes[i];
+    }
+
+    /**
+     * Replaces every tile with the tiles of {@code other}, such as a grid built off the client thread.
+     */
+    void copyFrom(TilemanModeSceneGrid other) {
+        for (int plane = 0; plane < planes.length; plane++) {
+            System.arraycopy(other.planes[plane], 0, planes[plane], 0, WORDS_PER_PLANE);
+        }
+        bulkVersion = ++version;
+    }
+
+    /**
+     * Moves every tile {@code dx}, {@code dy} tiles across the scene, dropping those moved out of it, such as when
+     * the scene is loaded around another base.
+     */
+    void translate(int dx, int dy) {
+        if (dx == 0 && dy == 0) {
+            return;
+        }
+        for (int plane = 0; plane < planes.length; plane++) {
+            long[] moved = new long[WORDS_PER_PLANE];
+            for (int word = 0; word < WORDS_PER_PLANE; word++) {
+                for (long bits = planes[plane][word]; bits != 0; bits &= bits - 1) {
+                    int index = word << 6 | Long.numberOfTrailingZeros(bits);
+                    int sceneX = index % SCENE_SIZE + dx;
+                    int sceneY = index / SCENE_SIZE + dy;
+                    if (inScene(plane, sceneX, sceneY)) {
+                        int movedIndex = index(sceneX, sceneY);
+                        moved[movedIndex >> 6] |= 1L << movedIndex;
+                    }
+                }
+            }
+            planes[plane] = moved;
+        }
+        bulkVersion = ++version;
+    }
+
+    void clear() {
+        for (long[] plane : planes) {
+            Arrays.fill(plane, 0L);
+        }
+        bulkVersion = ++version;
+    }
+
+    private void logChange(int plane, int sceneX, int sceneY) {
+        int logged = ++version - bulkVersion;
+        if (logged > MAX_LOGGED_CHANGES) {
+            // Too many to catch up on one by one, so treated like a change to many tiles
+            bulkVersion = version;
+            return;
+        }
+        changes[logged - 1] = plane << 16 | sceneX << 8 | sceneY;
+    }
+
+    private static boolean inScene(int plane, int sceneX, int sceneY) {
+        return plane >= 0 && plane < Constants.MAX_Z
+                && sceneX >= 0 && sceneX < SCENE_SIZE
+                && sceneY >= 0 && sceneY < SCENE_SIZE;
+    }
+
+    private static int index(int sceneX, int sceneY) {
+        return sceneY * SCENE_SIZE + sceneX;
+    }
+}
@@ -0,0 +1,123 @@
+package com.tileman;
+
+import com.google.common.base.Strings;
+import lombok.Getter;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tile count per plane of every saved region of an account, kept in the config next to the regions so the unlocked
+ * tiles can be counted at startup without decoding any of them.
+ *
+ * The payload is a format version byte, the number of regions, each region's id and plane counts, and the total, all
+ * as varints. The saved region ids double as a cheap check that the summary is current: if they differ from the
+ * region keys in the config, or the counts don't add up to the total, it is rebuilt from the regions.
+ */
+class TilemanModeSummary {
+    static final String KEY = "summary";
+
+    private static final String PREFIX = "b64:";
+    private static final int VERSION = 1;
+
+    private final Map<Integer, int[]> counts = new HashMap<>();
+    @Getter
+    private int total;
+
+    /**
+     * Replaces the counts of a region with those of {@code region}, which may be empty.
+     */
+    void put(int regionId, TilemanModeRegion region) {
+        int[] planeCounts = new int[TilemanModeRegion.PLANES];
+        if (region != null) {
+            for (int plane = 0; plane < planeCounts.length; plane++) {
+                planeCounts[plane] = region.size(plane);
+            }
+        }
+        putCounts(regionId, planeCounts);
+    }
+
+    void remove(int regionId) {
+        int[] removed = counts.remove(regionId);
+        if (removed != null) {
+            total -= sum(removed);
+        }
+    }
+
+    void clear() {
+        counts.clear();
+        total = 0;
+    }
+
+    Set<Integer> getRegionIds() {
+        return Collections.unmodifiableSet(counts.keySet());
+    }
+
+    void copyFrom(TilemanModeSummary other) {
+        clear();
+        for (Map.Entry<Integer, int[]> entry : other.counts.entrySet()) {
+            putCounts(entry.getKey(), entry.getValue().clone());
+        }
+    }
+
+    String encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(VERSION);
+        TilemanModeRegionCodec.writeVarInt(out, counts.size());
+        for (Map.Entry<Integer, int[]> entry : counts.entrySet()) {
+            TilemanModeRegionCodec.writeVarInt(out, entry.getKey());
+            for (int count : entry.getValue()) {
+                TilemanModeRegionCodec.writeVarInt(out, count);
+            }
+        }
+        TilemanModeRegionCodec.writeVarInt(out, total);
+        return PREFIX + Base64.getEncoder().encodeToString(out.toByteArray());
+    }
+
+    /**
+     * @return the summary, or null if there is none, it is malformed or it was written in another format.
+     */
+    static TilemanModeSummary decode(String value) {
+        if (Strings.isNullOrEmpty(value) || !value.startsWith(PREFIX)) {
+            return null;
+        }
+        try {
+            ByteBuffer in = ByteBuffer.wrap(Base64.getDecoder().decode(value.substring(PREFIX.length())));
+            if (in.get() != VERSION) {
+                return null;
+            }
+            TilemanModeSummary summary = new TilemanModeSummary();
+            int regions = TilemanModeRegionCodec.readVarInt(in);
+            for (int i = 0; i < regions; i++) {
+                int regionId = TilemanModeRegionCodec.readVarInt(in);
+                int[] planeCounts = new int[TilemanModeRegion.PLANES];
+                for (int plane = 0; plane < planeCounts.length; plane++) {
+                    planeCounts[plane] = TilemanModeRegionCodec.readVarInt(in);
+                }
+                summary.putCounts(regionId, planeCounts);
+            }
+            return TilemanModeRegionCodec.readVarInt(in) == summary.total && !in.hasRemaining() ? summary : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private void putCounts(int regionId, int[] planeCounts) {
+        remove(regionId);
+        counts.put(regionId, planeCounts);
+        total += sum(planeCounts);
+    }
+
+    private static int sum(int[] planeCounts) {
+        int sum = 0;
+        for (int count : planeCounts) {
+            sum += count;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,161 @@
+package com.tileman;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Backs up the unlocked tiles to a standalone file, and merges such a backup back in.
+ *
+ * The file is streamed through a small buffer a region at a time, so a write never holds more than one region of it
+ * in memory. A read keeps the decoded regions until the whole file has been checked, so a damaged file is never half
+ * imported. After a header it holds one chunk per region: the region id, the length of the region
+ * in bytes, then the region as encoded by {@link TilemanModeRegionCodec#encodeBytes(TilemanModeRegion)}.
+ * A region id of -1 ends the chunks and is followed by the total number of tiles, to catch truncated files.
+ */
+final class TilemanModeTileFile {
+    static final String EXTENSION = "tiles";
+
+    private static final int MAGIC = 0x544D5446; // TMTF
+    private static final int VERSION = 1;
+    private static final int END = -1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // The largest a region can encode to: a plane mask, then an encoding byte and a full bitmap per plane
+    private static final int MAX_REGION_BYTES = 1 + TilemanModeRegion.PLANES * (1 + TilemanModeRegion.REGION_SIZE * Long.BYTES);
+
+    private TilemanModeTileFile() {
+    }
+
+    /**
+     * Writes every unlocked tile to {@code path}. The file is written next to it first and then moved into place,
+     * so an existing backup is never left half overwritten.
+     * @return the number of tiles written.
+     */
+    static int write(TilemanModeTileStore store, Path path) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        int tiles = 0;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+
+            for (int regionId : store.getRegionIds()) {
+                // Regions are copied out one at a time, so marking can carry on during an export
+                TilemanModeRegion region = store.copyRegion(regionId);
+                if (region == null) {
+                    continue;
+                }
+                byte[] encoded = TilemanModeRegionCodec.encodeBytes(region);
+                if (buffer.remaining() < 2 * Integer.BYTES + encoded.length) {
+                    drain(channel, buffer);
+                }
+                buffer.putInt(regionId);
+                buffer.putInt(encoded.length);
+                buffer.put(encoded);
+                tiles += region.size();
+            }
+
+            if (buffer.remaining() < 2 * Integer.BYTES) {
+                drain(channel, buffer);
+            }
+            buffer.putInt(END);
+            buffer.putInt(tiles);
+            drain(channel, buffer);
+            channel.force(false);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return tiles;
+    }
+
+    /**
+     * Merges every tile in the file at {@code path} into {@code store}. Nothing is merged until the whole file has
+     * been read, so a malformed or truncated file leaves the store as it was.
+     * @return the number of newly unlocked tiles.
+     * @throws IOException if the file can't be read or is not a valid tile file.
+     */
+    static int read(Path path, TilemanModeTileStore store) throws IOException {
+        List<TilemanModeRegion> regions = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.flip();
+
+            fill(channel, buffer, 2 * Integer.BYTES);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a tile file");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported tile file version " + version);
+            }
+
+            int tiles = 0;
+            while (true) {
+                fill(channel, buffer, 2 * Integer.BYTES);
+                int regionId = buffer.getInt();
+                if (regionId == END) {
+                    int expected = buffer.getInt();
+                    if (expected != tiles) {
+                        throw new IOException("Tile file holds " + tiles + " tiles but should hold " + expected);
+                    }
+                    break;
+                }
+
+                int length = buffer.getInt();
+                if (length <= 0 || length > MAX_REGION_BYTES) {
+                    throw new IOException("Malformed region " + regionId + " of " + length + " bytes");
+                }
+                fill(channel, buffer, length);
+
+                // Decode from a view of exactly this chunk, so a malformed region can't run into the next one
+                ByteBuffer chunk = buffer.slice();
+                chunk.limit(length);
+                buffer.position(buffer.position() + length);
+                TilemanModeRegion region;
+                try {
+                    region = TilemanModeRegionCodec.decodeBytes(regionId, chunk);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
+                tiles += region.size();
+                regions.add(region);
+            }
+        }
+
+        int imported = 0;
+        for (TilemanModeRegion region : regions) {
+            imported += store.mergeRegion(region);
+        }
+        return imported;
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Reads from the channel until at least {@code bytes} are buffered.
+     */
+    private static void fill(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Tile file is truncated");
+            }
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,107 @@
+package com.tileman;
+
+import net.runelite.api.Client;
+import net.runelite.api.Perspective;
+import net.runelite.api.Point;
+import net.runelite.api.coords.LocalPoint;
+
+import java.awt.*;
+
+/**
+ * Canvas polygons of scene tiles and canvas points of their corners, kept for as long as the camera, viewport and
+ * scene stay put.
+ * While the player stands still nothing needs projecting; as soon as any of them change every cached polygon is
+ * dropped at once and tiles are re-projected as they are next drawn.
+ */
+class TilemanModeTilePolygonCache {
+    private static final int SCENE_SIZE = TilemanModeSceneGrid.SCENE_SIZE;
+    private static final int CORNERS = SCENE_SIZE + 1;
+    // Heights can only be sampled inside the scene, so the far corners borrow the height just inside it
+    private static final int MAX_LOCAL = SCENE_SIZE * Perspective.LOCAL_TILE_SIZE - 1;
+
+    private final Client client;
+    private final Polygon[] polygons = new Polygon[SCENE_SIZE * SCENE_SIZE];
+    // Generation each polygon was projected in; anything older is stale
+    private final int[] projectedIn = new int[SCENE_SIZE * SCENE_SIZE];
+    private final Point[] corners = new Point[CORNERS * CORNERS];
+    private final int[] cornerProjectedIn = new int[CORNERS * CORNERS];
+    private int generation = 1;
+
+    private final int[] key = new int[13];
+    private final int[] currentKey = new int[13];
+
+    TilemanModeTilePolygonCache(Client client) {
+        this.client = client;
+    }
+
+    /**
+     * Checks the camera against the one the cache was built for, dropping every polygon if it moved.
+     * Should be called once per frame before {@link #getTilePoly(int, int)}.
+     * @return true if the cached polygons were dropped.
+     */
+    boolean update() {
+        currentKey[0] = client.getCameraX();
+        currentKey[1] = client.getCameraY();
+        currentKey[2] = client.getCameraZ();
+        currentKey[3] = client.getCameraPitch();
+        currentKey[4] = client.getCameraYaw();
+        currentKey[5] = client.getScale();
+        currentKey[6] = client.getViewportXOffset();
+        currentKey[7] = client.getViewportYOffset();
+        currentKey[8] = client.getViewportWidth();
+        currentKey[9] = client.getViewportHeight();
+        currentKey[10] = client.getBaseX();
+        currentKey[11] = client.getBaseY();
+        currentKey[12] = client.getPlane();
+
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != currentKey[i]) {
+                System.arraycopy(currentKey, 0, key, 0, key.length);
+                invalidate();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void invalidate() {
+        generation++;
+    }
+
+    /**
+     * @return a counter that changes whenever the cached projections are dropped.
+     */
+    int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return the canvas polygon of the scene tile, or null if it is off screen.
+     */
+    Polygon getTilePoly(int sceneX, int sceneY) {
+        int index = sceneY * SCENE_SIZE + sceneX;
+        if (projectedIn[index] != generation) {
+            polygons[index] = Perspective.getCanvasTilePoly(client, LocalPoint.fromScene(sceneX, sceneY));
+            projectedIn[index] = generation;
+        }
+        return polygons[index];
+    }
+
+    /**
+     * @param cornerX scene x of the corner, from 0 to the scene size inclusive.
+     * @param cornerY scene y of the corner, from 0 to the scene size inclusive.
+     * @return the canvas point of the south west corner of the scene tile, or null if it is off screen.
+     */
+    Point getCorner(int cornerX, int cornerY) {
+        int index = cornerY * CORNERS + cornerX;
+        if (cornerProjectedIn[index] != generation) {
+            int localX = Math.min(cornerX * Perspective.LOCAL_TILE_SIZE, MAX_LOCAL);
+            int localY = Math.min(cornerY * Perspective.LOCAL_TILE_SIZE, MAX_LOCAL);
+            int height = Perspective.getTileHeight(client, new LocalPoint(localX, localY), client.getPlane());
+            corners[index] = Perspective.localToCanvas(client,
+                    cornerX * Perspective.LOCAL_TILE_SIZE, cornerY * Perspective.LOCAL_TILE_SIZE, height);
+            cornerProjectedIn[index] = generation;
+        }
+        return corners[index];
+    }
+}
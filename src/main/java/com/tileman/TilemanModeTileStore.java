@@ -0,0 +1,686 @@
+package com.tileman;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.config.ConfigManager;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Index of every unlocked tile, backed by one {@link TilemanModeRegion} bitmap per region.
+ * {@link #load()} only lists the account's regions; each is decoded from the config the first time it is needed
+ * and then kept in a least recently used cache bounded by {@link #setCacheBudget(long)}, so memory stays flat however
+ * much of the map is unlocked. Regions with changes not yet flushed are pinned in the cache until they are.
+ * Tiles are counted from a {@link TilemanModeSummary} saved along with the regions, so nothing is decoded at startup.
+ *
+ * Writes are deferred: a mutation only marks its region dirty, and {@link #flush()} later writes each dirty region
+ * once using {@link TilemanModeRegionCodec}, however many tiles changed in it since the previous flush.
+ * Single tile changes are also appended to a {@link TilemanModeJournal} when one is set, so those made since the
+ * last flush survive a crash. The journal is only compacted once the config holding its changes is saved, on logout,
+ * hop and shutdown or once it grows long; in between RuneLite's own periodic save persists the config.
+ *
+ * Tiles are kept per account, under the RuneScape profile of the account in the config. Only the selected
+ * account's regions are ever decoded; every other account's stay encoded in the config until it logs in.
+ */
+@Slf4j
+class TilemanModeTileStore {
+    static final String CONFIG_GROUP = "tilemanMode";
+    static final String REGION_PREFIX = "region_";
+    // Rough heap footprint of a decoded region: its bitmap plus object and map entry overhead
+    static final int REGION_BYTES = TilemanModeRegion.PLANES * TilemanModeRegion.REGION_SIZE * Long.BYTES + 96;
+
+    @Value
+    static class CacheStats {
+        int regions;
+        int cachedRegions;
+        long hits;
+        long misses;
+        long prefetches;
+        long evictions;
+    }
+
+    private final ConfigManager configManager;
+    // Decoded regions, least recently used first
+    private final LinkedHashMap<Integer, TilemanModeRegion> regions = new LinkedHashMap<>(16, 0.75f, true);
+    // Every region of the account with unlocked tiles, decoded or not, with the version it had when last evicted
+    private final Map<Integer, Long> regionVersions = new HashMap<>();
+    private final Set<Integer> dirtyRegions = new LinkedHashSet<>();
+    // Values a running flush is writing, read in place of the config until the writes are done
+    private final Map<Integer, String> pendingWrites = new HashMap<>();
+    private final TilemanModeSummary summary = new TilemanModeSummary();
+    private boolean summaryDirty;
+    private long cacheBudget = Long.MAX_VALUE;
+    private long hits, misses, prefetches, evictions;
+
+    // Held for the whole of a flush so two flushes can never write their snapshots out of order
+    private final Object flushLock = new Object();
+
+    // Journals longer than this, about 64k tile changes, are compacted by the next flush rather than on logout
+    private static final long COMPACT_JOURNAL_SIZE = 256 * 1024;
+
+    private TilemanModeJournal journal;
+    // Position in the journal up to which the flushed regions hold every change, or 0 if there is nothing to compact
+    private long flushedJournalPosition;
+    // RuneScape profile whose tiles are loaded, or null for the legacy tiles kept outside any account
+    private String profile;
+
+    @Inject
+    TilemanModeTileStore(ConfigManager configManager) {
+        this.configManager = configManager;
+    }
+
+    void load() {
+        flush();
+        synchronized (this) {
+            loadRegions();
+            replayJournal();
+        }
+    }
+
+    /**
+     * Sets the journal single tile changes are appended to, or null to stop journaling. Changes still in the
+     * journal are replayed by the next {@link #load()}.
+     */
+    synchronized void setJournal(TilemanModeJournal journal) {
+        this.journal = journal;
+        flushedJournalPosition = 0;
+    }
+
+    synchronized TilemanModeJournal getJournal() {
+        return journal;
+    }
+
+    synchronized String getProfile() {
+        return profile;
+    }
+
+    /**
+     * Bounds the decoded regions to about {@code bytes} of memory. Pinned regions can take it over budget.
+     */
+    synchronized void setCacheBudget(long bytes) {
+        cacheBudget = bytes;
+        evict();
+    }
+
+    synchronized CacheStats getCacheStats() {
+        return new CacheStats(regionVersions.size(), regions.size(), hits, misses, prefetches, evictions);
+    }
+
+    /**
+     * Switches to the tiles of another account, flushing the current one's first. The new account's regions are
+     * only decoded by the next {@link #load()}.
+     * @param profile the account's RuneScape profile key, or null for the legacy tiles kept outside any account.
+     */
+    void setProfile(String profile) {
+        synchronized (flushLock) {
+            flush();
+            synchronized (this) {
+                this.profile = profile;
+                clear();
+            }
+        }
+    }
+
+    /**
+     * Merges the tiles kept outside any account, from before tiles were kept per account or imported while logged
+     * out, into the selected account. The legacy regions are only removed once the account's regions are saved,
+     * so a failed save leaves them to be migrated again on the next login.
+     * @return the number of newly unlocked tiles.
+     */
+    int migrateLegacyRegions() {
+        List<String> legacyRegions;
+        int migrated = 0;
+        synchronized (this) {
+            if (profile == null) {
+                return 0;
+            }
+            legacyRegions = getAllRegionIds(CONFIG_GROUP);
+            if (legacyRegions.isEmpty()) {
+                return 0;
+            }
+            for (String regionId : legacyRegions) {
+                try {
+                    int id = Integer.parseInt(regionId);
+                    migrated += mergeRegion(TilemanModeRegionCodec.decode(id, configManager.getConfiguration(CONFIG_GROUP, REGION_PREFIX + regionId)));
+                } catch (RuntimeException e) {
+                    log.warn("Unable to migrate region {}", regionId, e);
+                }
+            }
+        }
+
+        if (!flush()) {
+            return migrated;
+        }
+        for (String regionId : legacyRegions) {
+            configManager.unsetConfiguration(CONFIG_GROUP, REGION_PREFIX + regionId);
+        }
+        configManager.unsetConfiguration(CONFIG_GROUP, TilemanModeSummary.KEY);
+        log.info("Migrated {} tiles from {} legacy regions to the logged in account", migrated, legacyRegions.size());
+        return migrated;
+    }
+
+    private void replayJournal() {
+        if (journal == null) {
+            return;
+        }
+        int[] replayed = new int[1];
+        try {
+            journal.replay(change -> {
+                TilemanModeTile tile = TilemanModeJournal.unpackTile(change);
+                if (TilemanModeJournal.isMarked(change) ? applyAdd(tile) : applyRemove(tile)) {
+                    replayed[0]++;
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Unable to replay the tile journal", e);
+        }
+        if (replayed[0] > 0) {
+            log.info("Recovered {} tile changes from the journal", replayed[0]);
+        } else if (dirtyRegions.isEmpty()) {
+            // The config already holds everything in the journal, though maybe not on disk yet
+            flushedJournalPosition = journal.position();
+        }
+    }
+
+    private void loadRegions() {
+        clear();
+        for (String regionId : getProfileRegionIds()) {
+            try {
+                regionVersions.put(Integer.parseInt(regionId), TilemanModeRegion.nextVersion());
+            } catch (NumberFormatException e) {
+                log.warn("Skipping malformed region key {}", regionId);
+            }
+        }
+        log.debug("Listed {} regions of profile {}", regionVersions.size(), profile);
+
+        TilemanModeSummary saved = TilemanModeSummary.decode(configManager.getConfiguration(CONFIG_GROUP, profile, TilemanModeSummary.KEY));
+        if (saved != null && saved.getRegionIds().equals(regionVersions.keySet())) {
+            summary.copyFrom(saved);
+            return;
+        }
+
+        // Missing, or stale after a save that didn't complete: count every region once and save it again
+        for (int regionId : regionVersions.keySet()) {
+            summary.put(regionId, decodeRegion(regionId, readRegion(regionId)));
+        }
+        summaryDirty = true;
+        log.info("Rebuilt the tile summary of {} regions", regionVersions.size());
+    }
+
+    /**
+     * @return the region, decoding it if it isn't cached, or null if it has no unlocked tiles.
+     */
+    private TilemanModeRegion getRegion(int regionId) {
+        TilemanModeRegion region = regions.get(regionId);
+        if (region != null) {
+            hits++;
+            return region;
+        }
+        if (!regionVersions.containsKey(regionId)) {
+            return null;
+        }
+        misses++;
+        return loadRegion(regionId);
+    }
+
+    private TilemanModeRegion getOrCreateRegion(int regionId) {
+        TilemanModeRegion region = getRegion(regionId);
+        if (region == null) {
+            region = new TilemanModeRegion(regionId);
+            regions.put(regionId, region);
+            regionVersions.put(regionId, region.getVersion());
+        }
+        return region;
+    }
+
+    private TilemanModeRegion loadRegion(int regionId) {
+        String value = readRegion(regionId);
+        TilemanModeRegion region = decodeRegion(regionId, value);
+        if (region == null) {
+            regionVersions.remove(regionId);
+            return null;
+        }
+        // Content is unchanged since the region was evicted, so keep its version and anything cached from it valid
+        region.restoreVersion(regionVersions.get(regionId));
+        regions.put(regionId, region);
+
+        // Upgrade regions still stored as JSON the first time they are read, so they are only parsed once
+        if (TilemanModeRegionCodec.isLegacy(value)) {
+            dirtyRegions.add(regionId);
+        }
+        evict();
+        return region;
+    }
+
+    private String readRegion(int regionId) {
+        if (pendingWrites.containsKey(regionId)) {
+            return pendingWrites.get(regionId);
+        }
+        return configManager.getConfiguration(CONFIG_GROUP, profile, REGION_PREFIX + regionId);
+    }
+
+    private static TilemanModeRegion decodeRegion(int regionId, String value) {
+        if (value == null) {
+            return null;
+        }
+        TilemanModeRegion region;
+        try {
+            region = TilemanModeRegionCodec.decode(regionId, value);
+        } catch (RuntimeException e) {
+            log.warn("Unable to decode region {}", regionId, e);
+            return null;
+        }
+        return region.isEmpty() ? null : region;
+    }
+
+    /**
+     * Evicts the least recently used regions that aren't pinned until the cache fits its budget again.
+     */
+    private void evict() {
+        Iterator<Map.Entry<Integer, TilemanModeRegion>> iterator = regions.entrySet().iterator();
+        while ((long) regions.size() * REGION_BYTES > cacheBudget && iterator.hasNext()) {
+            Map.Entry<Integer, TilemanModeRegion> entry = iterator.next();
+            if (dirtyRegions.contains(entry.getKey())) {
+                continue;
+            }
+            regionVersions.put(entry.getKey(), entry.getValue().getVersion());
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Decodes the regions that aren't cached yet, as long as they fit the cache without evicting anything.
+     * Meant for the background worker: the lock is taken per region, so lookups are never held up for long.
+     */
+    void prefetch(Collection<Integer> regionIds) {
+        for (int regionId : regionIds) {
+            synchronized (this) {
+                if (regions.containsKey(regionId) || !regionVersions.containsKey(regionId)) {
+                    continue;
+                }
+                if ((long) (regions.size() + 1) * REGION_BYTES > cacheBudget) {
+                    return;
+                }
+                if (loadRegion(regionId) != null) {
+                    prefetches++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the index. Anything not yet flushed is lost, so callers should {@link #flush()} first.
+     */
+    synchronized void clear() {
+        regions.clear();
+        regionVersions.clear();
+        dirtyRegions.clear();
+        pendingWrites.clear();
+        summary.clear();
+        summaryDirty = false;
+    }
+
+    synchronized boolean contains(TilemanModeTile tile) {
+        TilemanModeRegion region = getRegion(tile.getRegionId());
+        return region != null && region.contains(tile.getRegionX(), tile.getRegionY(), tile.getZ());
+    }
+
+    synchronized Collection<TilemanModeTile> getTiles(int regionId) {
+        TilemanModeRegion region = getRegion(regionId);
+        if (region == null) {
+            return Collections.emptyList();
+        }
+        return region.getTiles();
+    }
+
+    /**
+     * @return the version of the region, or 0 if it has no unlocked tiles. Never decodes the region.
+     */
+    synchronized long getRegionVersion(int regionId) {
+        TilemanModeRegion region = regions.get(regionId);
+        if (region != null) {
+            return region.getVersion();
+        }
+        Long version = regionVersions.get(regionId);
+        return version == null ? 0 : version;
+    }
+
+    /**
+     * Copies one plane of the region into {@code rows}, one long per row of 64 tiles.
+     * @return the version of the copied region, or 0 if it has no unlocked tiles.
+     */
+    synchronized long copyPlane(int regionId, int plane, long[] rows) {
+        TilemanModeRegion region = getRegion(regionId);
+        if (region == null) {
+            Arrays.fill(rows, 0L);
+            return 0;
+        }
+        for (int y = 0; y < TilemanModeRegion.REGION_SIZE; y++) {
+            rows[y] = region.getRow(y, plane);
+        }
+        return region.getVersion();
+    }
+
+    synchronized int countTiles() {
+        return summary.getTotal();
+    }
+
+    /**
+     * @return true if the tile was not already unlocked.
+     */
+    synchronized boolean addTile(TilemanModeTile tile) {
+        if (!applyAdd(tile)) {
+            return false;
+        }
+        journal(TilemanModeJournal.pack(tile, true), true);
+        return true;
+    }
+
+    /**
+     * @return true if the tile was unlocked.
+     */
+    synchronized boolean removeTile(TilemanModeTile tile) {
+        if (!applyRemove(tile)) {
+            return false;
+        }
+        journal(TilemanModeJournal.pack(tile, false), true);
+        return true;
+    }
+
+    /**
+     * Reverts the most recent single tile change that hasn't been undone yet, skipping any that later changes
+     * already reverted.
+     * @return the change that was undone, as packed by {@link TilemanModeJournal#pack}, or
+     * {@link TilemanModeJournal#NONE} if there is nothing left to undo.
+     */
+    synchronized int undo() {
+        if (journal == null) {
+            return TilemanModeJournal.NONE;
+        }
+        for (int change = journal.popUndo(); change != TilemanModeJournal.NONE; change = journal.popUndo()) {
+            TilemanModeTile tile = TilemanModeJournal.unpackTile(change);
+            boolean marked = TilemanModeJournal.isMarked(change);
+            if (marked ? applyRemove(tile) : applyAdd(tile)) {
+                journal(TilemanModeJournal.pack(tile, !marked), false);
+                return change;
+            }
+        }
+        return TilemanModeJournal.NONE;
+    }
+
+    synchronized boolean canUndo() {
+        return journal != null && journal.canUndo();
+    }
+
+    private boolean applyAdd(TilemanModeTile tile) {
+        TilemanModeRegion region = getOrCreateRegion(tile.getRegionId());
+        if (!region.add(tile.getRegionX(), tile.getRegionY(), tile.getZ())) {
+            return false;
+        }
+        markDirty(region);
+        return true;
+    }
+
+    private boolean applyRemove(TilemanModeTile tile) {
+        TilemanModeRegion region = getRegion(tile.getRegionId());
+        if (region == null || !region.remove(tile.getRegionX(), tile.getRegionY(), tile.getZ())) {
+            return false;
+        }
+        markDirty(region);
+        return true;
+    }
+
+    /**
+     * Pins a changed region until the next flush, dropping it from the index if it has no unlocked tiles left.
+     */
+    private void markDirty(TilemanModeRegion region) {
+        dirtyRegions.add(region.getRegionId());
+        if (region.isEmpty()) {
+            regions.remove(region.getRegionId());
+            regionVersions.remove(region.getRegionId());
+            summary.remove(region.getRegionId());
+        } else {
+            summary.put(region.getRegionId(), region);
+        }
+        summaryDirty = true;
+        evict();
+    }
+
+    private void journal(int change, boolean undoable) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.append(change, undoable);
+        } catch (IOException e) {
+            // The change is still in the index and gets flushed as usual, it just isn't crash safe until then
+            log.warn("Unable to journal tile change", e);
+        }
+    }
+
+    /**
+     * Adds every tile in {@code tiles} to the region, marking it dirty once if anything changed.
+     * @return the number of newly unlocked tiles.
+     */
+    synchronized int addTiles(int regionId, Collection<TilemanModeTile> tiles) {
+        TilemanModeRegion region = getOrCreateRegion(regionId);
+        int added = 0;
+        for (TilemanModeTile tile : tiles) {
+            if (region.add(tile.getRegionX(), tile.getRegionY(), tile.getZ())) {
+                added++;
+            }
+        }
+        if (added > 0 || region.isEmpty()) {
+            markDirty(region);
+        }
+        return added;
+    }
+
+    /**
+     * Adds every tile of {@code other} to the region with the same id, a row at a time.
+     * @return the number of newly unlocked tiles.
+     */
+    synchronized int mergeRegion(TilemanModeRegion other) {
+        TilemanModeRegion region = getOrCreateRegion(other.getRegionId());
+        int added = 0;
+        for (int plane = 0; plane < TilemanModeRegion.PLANES; plane++) {
+            for (int y = 0; y < TilemanModeRegion.REGION_SIZE; y++) {
+                added += region.addRow(y, plane, other.getRow(y, plane));
+            }
+        }
+        if (added > 0 || region.isEmpty()) {
+            markDirty(region);
+        }
+        return added;
+    }
+
+    /**
+     * @return the id of every region with unlocked tiles, decoded or not.
+     */
+    synchronized List<Integer> getRegionIds() {
+        return new ArrayList<>(regionVersions.keySet());
+    }
+
+    /**
+     * @return a copy of the region that is safe to read outside the store, or null if it has no unlocked tiles.
+     */
+    synchronized TilemanModeRegion copyRegion(int regionId) {
+        TilemanModeRegion region = getRegion(regionId);
+        if (region == null) {
+            return null;
+        }
+        TilemanModeRegion copy = new TilemanModeRegion(regionId);
+        for (int plane = 0; plane < TilemanModeRegion.PLANES; plane++) {
+            for (int y = 0; y < TilemanModeRegion.REGION_SIZE; y++) {
+                copy.addRow(y, plane, region.getRow(y, plane));
+            }
+        }
+        return copy;
+    }
+
+    synchronized boolean isDirty() {
+        return !dirtyRegions.isEmpty();
+    }
+
+    /**
+     * Writes every dirty region to the config. Regions are encoded under the index lock and written outside of it,
+     * so marking can carry on during the write; a region changed mid-flush is simply dirty again for the next one.
+     * A region whose write fails stays dirty and is retried by the next flush.
+     *
+     * Once every region is written, the journal records from before the snapshot can be compacted away by
+     * {@link #compactJournal()}. A flush only does so itself once the journal has grown long.
+     * @return false if any region couldn't be written.
+     */
+    boolean flush() {
+        synchronized (flushLock) {
+            Map<Integer, String> snapshot = new LinkedHashMap<>();
+            TilemanModeJournal flushedJournal;
+            String flushedProfile;
+            String flushedSummary;
+            long journalPosition;
+            synchronized (this) {
+                if (dirtyRegions.isEmpty() && !summaryDirty) {
+                    return true;
+                }
+                flushedJournal = journal;
+                flushedProfile = profile;
+                journalPosition = journal == null ? 0 : journal.position();
+                for (int regionId : dirtyRegions) {
+                    TilemanModeRegion region = regions.get(regionId);
+                    snapshot.put(regionId, region == null || region.isEmpty() ? null : TilemanModeRegionCodec.encode(region));
+                }
+                // No longer pinned, so the regions can be evicted while they are written; a reload reads the
+                // snapshot until then
+                pendingWrites.putAll(snapshot);
+                dirtyRegions.clear();
+                flushedSummary = summary.encode();
+                summaryDirty = false;
+            }
+
+            log.debug("Flushing {} regions", snapshot.size());
+            // The summary is dropped until every region is written, so a save cut short leaves none rather than a
+            // stale one
+            if (!snapshot.isEmpty()) {
+                configManager.unsetConfiguration(CONFIG_GROUP, flushedProfile, TilemanModeSummary.KEY);
+            }
+            boolean written = true;
+            for (Map.Entry<Integer, String> entry : snapshot.entrySet()) {
+                String key = REGION_PREFIX + entry.getKey();
+                try {
+                    if (entry.getValue() == null) {
+                        configManager.unsetConfiguration(CONFIG_GROUP, flushedProfile, key);
+                    } else {
+                        configManager.setConfiguration(CONFIG_GROUP, flushedProfile, key, entry.getValue());
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("Unable to save region {}", entry.getKey(), e);
+                    written = false;
+                    synchronized (this) {
+                        // Pin the region again, reloading it from the snapshot if it was evicted meanwhile
+                        getRegion(entry.getKey());
+                        dirtyRegions.add(entry.getKey());
+                    }
+                }
+            }
+            synchronized (this) {
+                pendingWrites.keySet().removeAll(snapshot.keySet());
+            }
+
+            if (written) {
+                configManager.setConfiguration(CONFIG_GROUP, flushedProfile, TilemanModeSummary.KEY, flushedSummary);
+            } else {
+                synchronized (this) {
+                    summaryDirty = true;
+                }
+            }
+
+            if (written && flushedJournal != null) {
+                synchronized (this) {
+                    if (journal == flushedJournal) {
+                        flushedJournalPosition = journalPosition;
+                    }
+                }
+                if (journalPosition >= COMPACT_JOURNAL_SIZE) {
+                    compact();
+                }
+            }
+            return written;
+        }
+    }
+
+    /**
+     * Flushes, then saves the config and drops the journal records it now holds. Called on logout, hop and shutdown,
+     * so the config is only saved outside RuneLite's own periodic save when the account is about to change.
+     */
+    void compactJournal() {
+        synchronized (flushLock) {
+            flush();
+            compact();
+        }
+    }
+
+    /**
+     * Drops the journal records before the last complete flush, once the config holding their changes is saved.
+     * Only called holding the flush lock, so no flush takes a journal position while the records move.
+     */
+    private void compact() {
+        TilemanModeJournal compacted;
+        long position;
+        synchronized (this) {
+            compacted = journal;
+            position = flushedJournalPosition;
+            flushedJournalPosition = 0;
+        }
+        if (compacted == null || position == 0) {
+            return;
+        }
+        // Setting a config value only queues it to be saved later, and until it is on disk the journal is all a
+        // crash would leave
+        configManager.sendConfig();
+        try {
+            compacted.compact(position);
+        } catch (IOException e) {
+            log.warn("Unable to compact the tile journal", e);
+        }
+    }
+
+    /**
+     * @return true if the config key holds tiles rather than a setting.
+     */
+    static boolean isTileKey(String key) {
+        return key.startsWith(REGION_PREFIX) || key.equals(TilemanModeSummary.KEY);
+    }
+
+    /**
+     * @return the ids of the regions saved for the selected profile.
+     */
+    private List<String> getProfileRegionIds() {
+        if (profile == null) {
+            return getAllRegionIds(CONFIG_GROUP);
+        }
+        List<String> regionIds = new ArrayList<>();
+        for (String key : configManager.getConfigurationKeys(CONFIG_GROUP + "." + profile + "." + REGION_PREFIX)) {
+            // Profile keys can contain underscores themselves, so split at the region's
+            regionIds.add(key.substring(key.lastIndexOf('_') + 1));
+        }
+        return regionIds;
+    }
+
+    List<String> getAllRegionIds(String configGroup) {
+        List<String> trimmedRegions = new ArrayList<>();
+        for (String region : configManager.getConfigurationKeys(configGroup + ".region")) {
+            trimmedRegions.add(region.substring(region.indexOf('_') + 1));
+        }
+        return trimmedRegions;
+    }
+
+    /**
+     * Reads a region stored as a JSON tile list, the format used by the Ground Marker plugin.
+     */
+    Collection<TilemanModeTile> getConfiguration(String configGroup, String key) {
+        return TilemanModeRegionCodec.decodeJson(configManager.getConfiguration(configGroup, key));
+    }
+}
@@ -0,0 +1,99 @@
+package com.tileman;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.callback.ClientThread;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Moves work that doesn't have to happen within a game tick off the client thread.
+ *
+ * The client thread does the minimal synchronous part of a step, such as reading the player's position or snapshotting
+ * the scene, and hands the rest to the background executor. Anything the result has to change on the client side,
+ * like the scene grid the overlays draw from, is published back through {@link ClientThread}, so tick time stays
+ * flat however many tiles the account has.
+ *
+ * The executor is the plugin's own single thread rather than RuneLite's shared one, so a long import or warm-up never
+ * holds up other plugins, and tasks are guaranteed to run one at a time in the order they were handed over.
+ */
+@Slf4j
+@Singleton
+class TilemanModeWorker {
+    private final ClientThread clientThread;
+
+    // Only set while the plugin is started
+    private volatile ExecutorService executor;
+
+    @Inject
+    TilemanModeWorker(ClientThread clientThread) {
+        this.clientThread = clientThread;
+    }
+
+    void start() {
+        start(Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("tileman-worker")
+                .setDaemon(true)
+                .build()));
+    }
+
+    /**
+     * Runs tasks on {@code executor}, which must run them one at a time and in order, such as a same-thread executor
+     * in benchmarks.
+     */
+    void start(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Drops every task not started yet. A task already running carries on; the plugin's tasks check whether they
+     * were superseded before changing any tiles.
+     */
+    void stop() {
+        ExecutorService stopped = executor;
+        executor = null;
+        if (stopped != null) {
+            stopped.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs {@code work} on the background executor, logging rather than losing it if it fails.
+     * Dropped if the worker is stopped.
+     */
+    void execute(String name, Runnable work) {
+        ExecutorService executor = this.executor;
+        if (executor == null) {
+            log.debug("Dropping background {} while stopped", name);
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    work.run();
+                } catch (RuntimeException e) {
+                    log.warn("Background {} failed", name, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("Dropping background {} while stopping", name);
+        }
+    }
+
+    /**
+     * Computes a result on the background executor and then hands it to {@code publish} on the client thread.
+     * Nothing is published if the computation fails.
+     */
+    <T> void submit(String name, Supplier<T> work, Consumer<T> publish) {
+        execute(name, () -> {
+            T result = work.get();
+            clientThread.invokeLater(() -> publish.accept(result));
+        });
+    }
+}
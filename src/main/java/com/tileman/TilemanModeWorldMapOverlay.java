@@ -28,8 +28,20 @@
 package com.tileman;
 
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.inject.Inject;
 
+import lombok.Value;
 import net.runelite.api.Client;
 import net.runelite.api.Point;
 import net.runelite.api.RenderOverview;
@@ -44,16 +56,42 @@ class TilemanModeWorldMapOverlay extends Overlay {
     private static final int REGION_SIZE = 1 << 6;
     // Bitmask to return first coordinate in region
     private static final int REGION_TRUNCATE = ~((1 << 6) - 1);
+    // Each region is kept at 64x64 and at every halving down to 1x1, about 21 KB of ARGB, so this caps the cache at
+    // about 5.5 MB
+    private static final int MAX_CACHED_REGIONS = 256;
+    private static final int LEVELS = Integer.numberOfTrailingZeros(REGION_SIZE) + 1;
 
     private final Client client;
     private final TilemanModeConfig config;
     private final TilemanModePlugin plugin;
+    private final TilemanModeProfiler profiler;
+    private final TilemanModeWorker worker;
+
+    // Pre-rasterized regions, one pixel per tile, keyed by region id and plane. Only touched while rendering
+    private final Map<Long, RegionImage> regionImages = new LinkedHashMap<Long, RegionImage>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, RegionImage> eldest) {
+            return size() > MAX_CACHED_REGIONS;
+        }
+    };
+    // Keys of the images last requested from the worker and not rendered yet
+    private final Set<Long> requested = new HashSet<>();
+    // Visible regions the last request was for, as {xMin, yMin, xMax, yMax} in tiles
+    private final int[] requestedView = new int[4];
+
+    // Images rendered by the worker, moved into the cache by the next frame
+    private final Map<Long, RegionImage> rendered = new ConcurrentHashMap<>();
+    // The request the worker is on or about to start, replaced rather than queued behind when the map moves
+    private final AtomicReference<Request> pending = new AtomicReference<>();
 
     @Inject
-    private TilemanModeWorldMapOverlay(Client client, TilemanModeConfig config, TilemanModePlugin plugin) {
+    private TilemanModeWorldMapOverlay(Client client, TilemanModeConfig config, TilemanModePlugin plugin, TilemanModeProfiler profiler,
+                                       TilemanModeWorker worker) {
         this.client = client;
         this.config = config;
         this.plugin = plugin;
+        this.profiler = profiler;
+        this.worker = worker;
         setPosition(OverlayPosition.DYNAMIC);
         setPriority(OverlayPriority.HIGH);
         setLayer(OverlayLayer.ALWAYS_ON_TOP);
@@ -65,7 +103,12 @@ class TilemanModeWorldMapOverlay extends Overlay {
             return null;
         }
 
-        drawOnWorldMap(graphics);
+        final long start = profiler.start(TilemanModeProfiler.Section.WORLD_MAP_OVERLAY);
+        try {
+            drawOnWorldMap(graphics);
+        } finally {
+            profiler.stop(TilemanModeProfiler.Section.WORLD_MAP_OVERLAY, start);
+        }
 
         return null;
     }
@@ -93,26 +136,250 @@ class TilemanModeWorldMapOverlay extends Overlay {
         int yRegionMin = (yTileMin & REGION_TRUNCATE);
         int yRegionMax = ((worldMapPosition.getY() + heightInTiles / 2) & REGION_TRUNCATE) + REGION_SIZE;
         int regionPixelSize = (int) Math.ceil(REGION_SIZE * pixelsPerTile);
+        int tileSize = regionPixelSize / REGION_SIZE;
+        // Zoomed far enough out, tiles are less than a pixel and the region is scaled as a whole
+        int imageSize = tileSize > 0 ? tileSize * REGION_SIZE : regionPixelSize;
+        int level = tileSize > 0 ? 0 : getLevel(regionPixelSize, pixelsPerTile);
+        int plane = client.getPlane();
+        int rgb = config.markerColor().getRGB() | 0xFF000000;
+
+        collectRendered();
+        requestImages(xRegionMin, yRegionMin, xRegionMax, yRegionMax, plane, rgb);
+
+        Object interpolation = graphics.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
 
         for (int x = xRegionMin; x < xRegionMax; x += REGION_SIZE) {
             for (int y = yRegionMin; y < yRegionMax; y += REGION_SIZE) {
                 int regionId = ((x >> 6) << 8) | (y >> 6);
-                for (final TilemanModeTile tile : plugin.getTiles(regionId)) {
-                    if(tile.getZ() != client.getPlane()) {
-                        continue;
-                    }
-                    int yTileOffset = -(yTileMin - y) + 2; // Added offset of 2 as tiles were misaligned
-                    int xTileOffset = x + widthInTiles / 2 - worldMapPosition.getX();
-                    int xPos = ((int) (xTileOffset * pixelsPerTile)) + (int) worldMapRect.getX();
-                    int yPos = (worldMapRect.height - (int) (yTileOffset * pixelsPerTile)) + (int) worldMapRect.getY();
-                    int size = (regionPixelSize / (64 - Math.round(48f * ((8f - pixelsPerTile) / 7f))));
-                    int tileSize = regionPixelSize / 64;
-
-                    graphics.setColor(new Color(config.markerColor().getRGB()));
-                    graphics.fillRect(xPos + (tile.getRegionX() * tileSize), yPos - (tile.getRegionY() * tileSize) + tileSize, size - 1, size - 1);
-                    graphics.drawRect(xPos + (tile.getRegionX() * tileSize), yPos - (tile.getRegionY() * tileSize) + tileSize, size - 1, size - 1);
+                BufferedImage image = getRegionImage(regionId, plane, level);
+                if (image == null) {
+                    continue;
+                }
+
+                int yTileOffset = -(yTileMin - y) + 2; // Added offset of 2 as tiles were misaligned
+                int xTileOffset = x + widthInTiles / 2 - worldMapPosition.getX();
+                int xPos = ((int) (xTileOffset * pixelsPerTile)) + (int) worldMapRect.getX();
+                int yPos = (worldMapRect.height - (int) (yTileOffset * pixelsPerTile)) + (int) worldMapRect.getY();
+
+                // The image's bottom row is regionY 0, whose tile starts one tile below yPos
+                graphics.drawImage(image, xPos, yPos + 2 * tileSize - imageSize, imageSize, imageSize, null);
+            }
+        }
+
+        if (interpolation != null) {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+        }
+    }
+
+    /**
+     * Moves the images the worker has rendered since the last frame into the cache.
+     */
+    private void collectRendered() {
+        for (Iterator<Map.Entry<Long, RegionImage>> it = rendered.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Long, RegionImage> entry = it.next();
+            it.remove();
+            requested.remove(entry.getKey());
+            regionImages.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Once the map is panned or zoomed, or a visible region needs a new image, asks the worker for the images missing
+     * or out of date, the visible regions first and then the ring around them, so those are ready by the time they
+     * scroll into view.
+     */
+    private void requestImages(int xMin, int yMin, int xMax, int yMax, int plane, int rgb) {
+        if (requestedView[0] == xMin && requestedView[1] == yMin && requestedView[2] == xMax && requestedView[3] == yMax
+                && !needsRequest(xMin, yMin, xMax, yMax, plane, rgb)) {
+            return;
+        }
+        requestedView[0] = xMin;
+        requestedView[1] = yMin;
+        requestedView[2] = xMax;
+        requestedView[3] = yMax;
+
+        List<Integer> regionIds = new ArrayList<>();
+        List<Integer> around = new ArrayList<>();
+        for (int x = xMin - REGION_SIZE; x < xMax + REGION_SIZE; x += REGION_SIZE) {
+            for (int y = yMin - REGION_SIZE; y < yMax + REGION_SIZE; y += REGION_SIZE) {
+                if (x < 0 || y < 0) {
+                    continue;
+                }
+                int regionId = ((x >> 6) << 8) | (y >> 6);
+                if (!needsImage(regionId, plane, rgb)) {
+                    continue;
+                }
+                boolean visible = x >= xMin && x < xMax && y >= yMin && y < yMax;
+                (visible ? regionIds : around).add(regionId);
+            }
+        }
+        regionIds.addAll(around);
+
+        // Images of an earlier request the worker hasn't got to are dropped with it
+        requested.clear();
+        for (int regionId : regionIds) {
+            requested.add(key(regionId, plane));
+        }
+        if (!regionIds.isEmpty() && pending.getAndSet(new Request(regionIds, plane, rgb)) == null) {
+            worker.execute("world map render", this::renderPending);
+        }
+    }
+
+    /**
+     * @return true if a visible region needs an image that hasn't been asked for yet.
+     */
+    private boolean needsRequest(int xMin, int yMin, int xMax, int yMax, int plane, int rgb) {
+        for (int x = xMin; x < xMax; x += REGION_SIZE) {
+            for (int y = yMin; y < yMax; y += REGION_SIZE) {
+                int regionId = ((x >> 6) << 8) | (y >> 6);
+                if (needsImage(regionId, plane, rgb) && !requested.contains(key(regionId, plane))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean needsImage(int regionId, int plane, int rgb) {
+        long version = plugin.getTileStore().getRegionVersion(regionId);
+        if (version == 0) {
+            return false;
+        }
+        RegionImage cached = regionImages.get(key(regionId, plane));
+        return cached == null || cached.getVersion() != version || cached.getRgb() != rgb;
+    }
+
+    /**
+     * Picks how coarse an image to draw once tiles are smaller than a pixel. Scaling the full image down would drop
+     * most tiles, so each pixel of the chosen level covers a square of tiles, drawn at least as large as tiles were
+     * always drawn at that zoom.
+     * @return the level, each halving the image once.
+     */
+    private static int getLevel(int regionPixelSize, float pixelsPerTile) {
+        int minTileSize = Math.max(1, regionPixelSize / (REGION_SIZE - Math.round(48f * ((8f - pixelsPerTile) / 7f))));
+        int level = 0;
+        while (level < LEVELS - 1 && (regionPixelSize << level) < minTileSize * REGION_SIZE) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * @return the cached image of the region's unlocked tiles on the plane at the level, possibly from before its
+     * latest change, or null if it has none or isn't rendered yet.
+     */
+    private BufferedImage getRegionImage(int regionId, int plane, int level) {
+        if (plugin.getTileStore().getRegionVersion(regionId) == 0) {
+            return null;
+        }
+        RegionImage cached = regionImages.get(key(regionId, plane));
+        return cached == null || cached.getLevels() == null ? null : cached.getLevels()[level];
+    }
+
+    /**
+     * @return the number of cached region images with unlocked tiles, ready to be drawn.
+     */
+    int countCachedImages() {
+        int count = 0;
+        for (RegionImage image : regionImages.values()) {
+            if (image.getLevels() != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Works through the pending request on the background worker, moving on to whichever request replaced it, until
+     * none is left.
+     */
+    private void renderPending() {
+        Request request = pending.get();
+        while (true) {
+            try {
+                render(request);
+            } catch (RuntimeException e) {
+                // Lets the next request start another run
+                pending.set(null);
+                throw e;
+            }
+            if (pending.compareAndSet(request, null)) {
+                return;
+            }
+            request = pending.get();
+        }
+    }
+
+    /**
+     * Decodes and rasterizes the regions of a request, stopping as soon as another request replaces it.
+     */
+    private void render(Request request) {
+        TilemanModeTileStore tileStore = plugin.getTileStore();
+        tileStore.prefetch(request.getRegionIds());
+
+        long[] rows = new long[REGION_SIZE];
+        int[] pixels = new int[REGION_SIZE * REGION_SIZE];
+        for (int regionId : request.getRegionIds()) {
+            if (pending.get() != request) {
+                return;
+            }
+            long version = tileStore.copyPlane(regionId, request.getPlane(), rows);
+            BufferedImage[] levels = null;
+            if (!isEmpty(rows)) {
+                levels = new BufferedImage[LEVELS];
+                for (int level = 0; level < LEVELS; level++) {
+                    levels[level] = rasterize(rows, level, request.getRgb(), pixels);
                 }
             }
+            rendered.put(key(regionId, request.getPlane()), new RegionImage(levels, version, request.getRgb()));
+        }
+    }
+
+    /**
+     * Draws one pixel per square of 2^level by 2^level tiles, set if any tile in the square is unlocked, so no tile is
+     * lost however coarse the level.
+     */
+    private static BufferedImage rasterize(long[] rows, int level, int rgb, int[] pixels) {
+        int size = REGION_SIZE >> level;
+        Arrays.fill(pixels, 0, size * size, 0);
+        for (int regionY = 0; regionY < REGION_SIZE; regionY++) {
+            // The image's top row is the region's north edge
+            int offset = (size - 1 - (regionY >> level)) * size;
+            for (long row = rows[regionY]; row != 0; row &= row - 1) {
+                pixels[offset + (Long.numberOfTrailingZeros(row) >> level)] = rgb;
+            }
+        }
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, size, size, pixels, 0, size);
+        return image;
+    }
+
+    private static boolean isEmpty(long[] rows) {
+        for (long row : rows) {
+            if (row != 0) {
+                return false;
+            }
         }
+        return true;
+    }
+
+    private static long key(int regionId, int plane) {
+        return ((long) regionId << 2) | plane;
+    }
+
+    @Value
+    private static class RegionImage {
+        // The region at 64x64 and then at each halving, or null if it has no unlocked tiles on the plane
+        BufferedImage[] levels;
+        long version;
+        int rgb;
+    }
+
+    @Value
+    private static class Request {
+        List<Integer> regionIds;
+        int plane;
+        int rgb;
     }
 }
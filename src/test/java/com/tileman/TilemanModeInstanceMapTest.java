@@ -0,0 +1,132 @@
+package com.tileman;
+
+import net.runelite.api.coords.WorldPoint;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TilemanModeInstanceMapTest
+{
+	private static final int BASE_X = 6400;
+	private static final int BASE_Y = 3200;
+	// Region 12850 starts at world tile 3200, 3200
+	private static final int REGION_ID = 12850;
+
+	@Test
+	public void testUnrotatedChunkKeepsOffsets()
+	{
+		TilemanModeInstanceMap map = new TilemanModeInstanceMap(templates(1, 2, 0, 3200 + 8, 3200 + 16, 0));
+		List<WorldPoint> points = map.toScene(new TilemanModeTile(REGION_ID, 8 + 1, 16 + 2, 1), BASE_X, BASE_Y);
+
+		// Scene chunk 2, 0 on plane 1
+		assertEquals(Collections.singletonList(new WorldPoint(BASE_X + 16 + 1, BASE_Y + 2, 1)), points);
+	}
+
+	@Test
+	public void testTilesKeepTheirPlane()
+	{
+		int[][][] templates = templates(1, 2, 0, 3200 + 8, 3200 + 16, 0);
+		// Copied from plane 2 of the template, which like WorldPoint.toLocalInstance is ignored
+		templates[1][2][0] = chunk(3200 + 8, 3200 + 16, 2, 0);
+		TilemanModeInstanceMap map = new TilemanModeInstanceMap(templates);
+
+		assertTrue(map.toScene(new TilemanModeTile(REGION_ID, 8 + 1, 16 + 2, 0), BASE_X, BASE_Y).isEmpty());
+		assertTrue(map.toScene(new TilemanModeTile(REGION_ID, 8 + 1, 16 + 2, 2), BASE_X, BASE_Y).isEmpty());
+		assertEquals(Collections.singletonList(new WorldPoint(BASE_X + 16 + 1, BASE_Y + 2, 1)),
+			map.toScene(new TilemanModeTile(REGION_ID, 8 + 1, 16 + 2, 1), BASE_X, BASE_Y));
+
+		long[] rows = new long[TilemanModeRegion.REGION_SIZE];
+		rows[16 + 2] = 1L << (8 + 1);
+		TilemanModeSceneGrid grid = new TilemanModeSceneGrid();
+		map.addToGrid(REGION_ID, 2, rows, grid);
+		assertFalse(grid.contains(1, 16 + 1, 2));
+		map.addToGrid(REGION_ID, 1, rows, grid);
+		assertTrue(grid.contains(1, 16 + 1, 2));
+	}
+
+	@Test
+	public void testRotatedChunks()
+	{
+		TilemanModeTile tile = new TilemanModeTile(REGION_ID, 1, 2, 0);
+		int[][] expected = {{1, 2}, {2, 6}, {6, 5}, {5, 1}};
+		for (int rotation = 0; rotation < expected.length; rotation++)
+		{
+			TilemanModeInstanceMap map = new TilemanModeInstanceMap(templates(0, 0, 0, 3200, 3200, rotation));
+			assertEquals(Collections.singletonList(new WorldPoint(BASE_X + expected[rotation][0], BASE_Y + expected[rotation][1], 0)),
+				map.toScene(tile, BASE_X, BASE_Y));
+		}
+	}
+
+	@Test
+	public void testTilesOutsideTheTemplatesAreNotInTheScene()
+	{
+		TilemanModeInstanceMap map = new TilemanModeInstanceMap(templates(0, 0, 0, 3200, 3200, 0));
+
+		assertTrue(map.toScene(new TilemanModeTile(REGION_ID, 8, 0, 0), BASE_X, BASE_Y).isEmpty());
+		assertTrue(map.toScene(new TilemanModeTile(REGION_ID, 0, 0, 1), BASE_X, BASE_Y).isEmpty());
+		assertEquals(Collections.singletonList(REGION_ID), new ArrayList<>(map.getRegionIds()));
+	}
+
+	@Test
+	public void testGridMatchesSingleTiles()
+	{
+		int[][][] templates = templates(0, 5, 7, 3200 + 24, 3200 + 40, 3);
+		// The same template chunk copied a second time, unrotated
+		templates[0][0][0] = chunk(3200 + 24, 3200 + 40, 0, 0);
+		TilemanModeInstanceMap map = new TilemanModeInstanceMap(templates);
+
+		TilemanModeRegion region = new TilemanModeRegion(REGION_ID);
+		region.add(24, 40, 0);
+		region.add(31, 43, 0);
+		region.add(0, 0, 0);
+		long[] rows = new long[TilemanModeRegion.REGION_SIZE];
+		for (int y = 0; y < rows.length; y++)
+		{
+			rows[y] = region.getRow(y, 0);
+		}
+		TilemanModeSceneGrid grid = new TilemanModeSceneGrid();
+		map.addToGrid(REGION_ID, 0, rows, grid);
+
+		for (TilemanModeTile tile : region.getTiles())
+		{
+			for (WorldPoint point : map.toScene(tile, BASE_X, BASE_Y))
+			{
+				assertTrue(grid.contains(point.getPlane(), point.getX() - BASE_X, point.getY() - BASE_Y));
+			}
+		}
+		assertEquals(2, map.toScene(new TilemanModeTile(REGION_ID, 31, 43, 0), BASE_X, BASE_Y).size());
+		// Tile 0, 0 isn't in a copied chunk, while tile 24, 40 is copied to the scene's first tile
+		assertTrue(map.toScene(new TilemanModeTile(REGION_ID, 0, 0, 0), BASE_X, BASE_Y).isEmpty());
+		assertTrue(grid.contains(0, 0, 0));
+		assertFalse(grid.contains(0, 1, 0));
+	}
+
+	/**
+	 * @return empty templates except for one chunk of the scene, copied from the chunk starting at the world tile.
+	 */
+	private static int[][][] templates(int scenePlane, int sceneChunkX, int sceneChunkY, int worldX, int worldY, int rotation)
+	{
+		int[][][] templates = new int[4][13][13];
+		for (int[][] plane : templates)
+		{
+			for (int[] column : plane)
+			{
+				Arrays.fill(column, -1);
+			}
+		}
+		templates[scenePlane][sceneChunkX][sceneChunkY] = chunk(worldX, worldY, 0, rotation);
+		return templates;
+	}
+
+	private static int chunk(int worldX, int worldY, int plane, int rotation)
+	{
+		return plane << 24 | (worldX / 8) << 14 | (worldY / 8) << 3 | rotation << 1;
+	}
+}
@@ -0,0 +1,175 @@
+package com.tileman;
+
+import net.runelite.client.config.ConfigManager;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class TilemanModeJournalTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testPackRoundTrip()
+	{
+		TilemanModeTile[] tiles = {
+			new TilemanModeTile(0, 0, 0, 0),
+			new TilemanModeTile(12850, 21, 42, 1),
+			new TilemanModeTile(0xFFFF, 63, 63, 3),
+		};
+		for (TilemanModeTile tile : tiles)
+		{
+			for (boolean marked : new boolean[]{true, false})
+			{
+				int change = TilemanModeJournal.pack(tile, marked);
+				assertEquals(tile, TilemanModeJournal.unpackTile(change));
+				assertEquals(marked, TilemanModeJournal.isMarked(change));
+				assertTrue(change != TilemanModeJournal.NONE);
+			}
+		}
+	}
+
+	@Test
+	public void testReopenedJournalReplaysChangesInOrder() throws IOException
+	{
+		Path path = journalPath();
+		List<Integer> changes = new ArrayList<>();
+		try (TilemanModeJournal journal = TilemanModeJournal.open(path))
+		{
+			for (int x = 0; x < 64; x++)
+			{
+				int change = TilemanModeJournal.pack(new TilemanModeTile(12850, x, x / 2, 0), x % 3 != 0);
+				journal.append(change, true);
+				changes.add(change);
+			}
+		}
+
+		assertEquals(changes, replay(path));
+	}
+
+	@Test
+	public void testTornRecordIsDropped() throws IOException
+	{
+		Path path = journalPath();
+		int change = TilemanModeJournal.pack(new TilemanModeTile(12850, 1, 2, 0), true);
+		try (TilemanModeJournal journal = TilemanModeJournal.open(path))
+		{
+			journal.append(change, true);
+		}
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND))
+		{
+			channel.write(ByteBuffer.wrap(new byte[]{1, 2}));
+		}
+
+		List<Integer> replayed = replay(path);
+		assertEquals(1, replayed.size());
+		assertEquals(change, (int) replayed.get(0));
+	}
+
+	@Test
+	public void testCompactKeepsLaterChanges() throws IOException
+	{
+		Path path = journalPath();
+		int first = TilemanModeJournal.pack(new TilemanModeTile(12850, 1, 1, 0), true);
+		int second = TilemanModeJournal.pack(new TilemanModeTile(12851, 2, 2, 0), false);
+		try (TilemanModeJournal journal = TilemanModeJournal.open(path))
+		{
+			journal.append(first, true);
+			long flushed = journal.position();
+			journal.append(second, true);
+			journal.compact(flushed);
+			journal.append(first, true);
+		}
+		List<Integer> expected = new ArrayList<>();
+		expected.add(second);
+		expected.add(first);
+		assertEquals(expected, replay(path));
+
+		try (TilemanModeJournal journal = TilemanModeJournal.open(path))
+		{
+			journal.compact(journal.position());
+		}
+		assertTrue(replay(path).isEmpty());
+	}
+
+	@Test
+	public void testFlushLeavesCompactingToLogout() throws IOException
+	{
+		ConfigManager configManager = mock(ConfigManager.class);
+		TilemanModeTileStore store = new TilemanModeTileStore(configManager);
+		try (TilemanModeJournal journal = TilemanModeJournal.open(journalPath()))
+		{
+			store.setJournal(journal);
+			store.addTile(new TilemanModeTile(12850, 1, 1, 0));
+			store.flush();
+			// The config isn't saved yet, so the journal still covers a crash
+			verify(configManager, never()).sendConfig();
+			List<Integer> replayed = new ArrayList<>();
+			journal.replay(replayed::add);
+			assertEquals(1, replayed.size());
+
+			store.addTile(new TilemanModeTile(12850, 2, 1, 0));
+			store.compactJournal();
+			verify(configManager).sendConfig();
+			replayed.clear();
+			journal.replay(replayed::add);
+			assertTrue(replayed.isEmpty());
+		}
+	}
+
+	@Test
+	public void testUndoRevertsLatestChangeFirst() throws IOException
+	{
+		TilemanModeTile a = new TilemanModeTile(12850, 1, 1, 0);
+		TilemanModeTile b = new TilemanModeTile(12850, 2, 1, 0);
+		TilemanModeTileStore store = new TilemanModeTileStore(null);
+		try (TilemanModeJournal journal = TilemanModeJournal.open(journalPath()))
+		{
+			store.setJournal(journal);
+			store.addTile(a);
+			store.addTile(b);
+			store.removeTile(a);
+
+			assertEquals(TilemanModeJournal.pack(a, false), store.undo());
+			assertTrue(store.contains(a));
+			assertEquals(TilemanModeJournal.pack(b, true), store.undo());
+			assertFalse(store.contains(b));
+			// Back to before anything was marked
+			assertEquals(TilemanModeJournal.pack(a, true), store.undo());
+			assertFalse(store.contains(a));
+			assertEquals(TilemanModeJournal.NONE, store.undo());
+			assertFalse(store.canUndo());
+		}
+	}
+
+	private Path journalPath()
+	{
+		return folder.getRoot().toPath().resolve("tileman").resolve("tiles.journal");
+	}
+
+	private static List<Integer> replay(Path path) throws IOException
+	{
+		List<Integer> replayed = new ArrayList<>();
+		try (TilemanModeJournal journal = TilemanModeJournal.open(path))
+		{
+			journal.replay(replayed::add);
+		}
+		return replayed;
+	}
+}
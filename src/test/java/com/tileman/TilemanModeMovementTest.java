@@ -0,0 +1,256 @@
+package com.tileman;
+
+import net.runelite.api.CollisionDataFlag;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the raw flag mask decisions in {@link TilemanModeMovement} against the {@link MovementFlag} based logic
+ * they replaced, for every combination of the movement flags.
+ */
+public class TilemanModeMovementTest
+{
+	// Every bit any MovementFlag reads, plus line of sight which must be ignored
+	private static final int[] BITS = {
+		CollisionDataFlag.BLOCK_MOVEMENT_NORTH_WEST,
+		CollisionDataFlag.BLOCK_MOVEMENT_NORTH,
+		CollisionDataFlag.BLOCK_MOVEMENT_NORTH_EAST,
+		CollisionDataFlag.BLOCK_MOVEMENT_EAST,
+		CollisionDataFlag.BLOCK_MOVEMENT_SOUTH_EAST,
+		CollisionDataFlag.BLOCK_MOVEMENT_SOUTH,
+		CollisionDataFlag.BLOCK_MOVEMENT_SOUTH_WEST,
+		CollisionDataFlag.BLOCK_MOVEMENT_WEST,
+		CollisionDataFlag.BLOCK_MOVEMENT_OBJECT,
+		CollisionDataFlag.BLOCK_MOVEMENT_FLOOR_DECORATION,
+		CollisionDataFlag.BLOCK_MOVEMENT_FLOOR,
+		CollisionDataFlag.BLOCK_LINE_OF_SIGHT_FULL,
+	};
+
+	private static final int[][] DIAGONAL_MOVES = {
+		{128, 128}, {128, -128}, {-128, 128}, {-128, -128},
+	};
+
+	private static final int[][] L_MOVES = {
+		{256, 128}, {256, -128}, {-256, 128}, {-256, -128},
+		{128, 256}, {128, -256}, {-128, 256}, {-128, -256},
+	};
+
+	private static final MovementFlag[] FULL_BLOCK = {
+		MovementFlag.BLOCK_MOVEMENT_FLOOR,
+		MovementFlag.BLOCK_MOVEMENT_FLOOR_DECORATION,
+		MovementFlag.BLOCK_MOVEMENT_OBJECT,
+		MovementFlag.BLOCK_MOVEMENT_FULL,
+	};
+
+	private static final MovementFlag[] ALL_DIRECTIONS = {
+		MovementFlag.BLOCK_MOVEMENT_NORTH_WEST,
+		MovementFlag.BLOCK_MOVEMENT_NORTH,
+		MovementFlag.BLOCK_MOVEMENT_NORTH_EAST,
+		MovementFlag.BLOCK_MOVEMENT_EAST,
+		MovementFlag.BLOCK_MOVEMENT_SOUTH_EAST,
+		MovementFlag.BLOCK_MOVEMENT_SOUTH,
+		MovementFlag.BLOCK_MOVEMENT_SOUTH_WEST,
+		MovementFlag.BLOCK_MOVEMENT_WEST,
+	};
+
+	@Test
+	public void testFullBlockMatchesMovementFlags()
+	{
+		for (int combination = 0; combination < 1 << BITS.length; combination++)
+		{
+			int flags = toFlags(combination);
+			assertEquals("flags " + Integer.toHexString(flags),
+				containsAnyOf(toMovementFlags(flags), FULL_BLOCK),
+				TilemanModeMovement.isFullyBlocked(flags));
+		}
+	}
+
+	@Test
+	public void testLMovementMatchesMovementFlags()
+	{
+		for (int[] move : L_MOVES)
+		{
+			for (int combination = 0; combination < 1 << BITS.length; combination++)
+			{
+				int flags = toFlags(combination);
+				assertEquals("move " + Arrays.toString(move) + " flags " + Integer.toHexString(flags),
+					referenceLFill(move[0], move[1], toMovementFlags(flags)),
+					TilemanModeMovement.lFill(move[0], move[1], flags));
+			}
+		}
+	}
+
+	@Test
+	public void testCornerMovementMatchesMovementFlags()
+	{
+		// Line of sight is covered by the single tile tests, leaving it out keeps this to 4 million pairs per move
+		int combinations = 1 << (BITS.length - 1);
+		MovementFlag[][] movementFlags = new MovementFlag[combinations][];
+		for (int combination = 0; combination < combinations; combination++)
+		{
+			movementFlags[combination] = toMovementFlags(toFlags(combination));
+		}
+
+		for (int[] move : DIAGONAL_MOVES)
+		{
+			for (int north = 0; north < combinations; north++)
+			{
+				int northFlags = toFlags(north);
+				for (int south = 0; south < combinations; south++)
+				{
+					int southFlags = toFlags(south);
+					int expected = referenceCornerFill(move[0], move[1], movementFlags[north], movementFlags[south]);
+					int actual = TilemanModeMovement.cornerFill(move[0], move[1], northFlags, southFlags);
+					if (expected != actual)
+					{
+						assertEquals("move " + Arrays.toString(move) + " north " + Integer.toHexString(northFlags)
+							+ " south " + Integer.toHexString(southFlags), expected, actual);
+					}
+				}
+			}
+		}
+	}
+
+	private static int toFlags(int combination)
+	{
+		int flags = 0;
+		for (int bit = 0; bit < BITS.length; bit++)
+		{
+			if ((combination & (1 << bit)) != 0)
+			{
+				flags |= BITS[bit];
+			}
+		}
+		return flags;
+	}
+
+	private static MovementFlag[] toMovementFlags(int flags)
+	{
+		Set<MovementFlag> set = MovementFlag.getSetFlags(flags);
+		return set.toArray(new MovementFlag[0]);
+	}
+
+	// The decisions below are the plugin's original MovementFlag based logic, kept as the reference
+
+	private static int referenceLFill(int xDiff, int yDiff, MovementFlag[] tileBesideFlagsArray)
+	{
+		if (tileBesideFlagsArray.length == 0)
+		{
+			return TilemanModeMovement.FILL_BESIDE;
+		}
+		else if (containsAnyOf(FULL_BLOCK, tileBesideFlagsArray))
+		{
+			return TilemanModeMovement.FILL_AROUND;
+		}
+		else if (containsAnyOf(ALL_DIRECTIONS, tileBesideFlagsArray))
+		{
+			MovementFlag direction1, direction2;
+			if (yDiff == 256 || yDiff == -128)
+			{
+				direction1 = MovementFlag.BLOCK_MOVEMENT_SOUTH;
+			}
+			else
+			{
+				direction1 = MovementFlag.BLOCK_MOVEMENT_NORTH;
+			}
+			if (xDiff == 256 || xDiff == -128)
+			{
+				direction2 = MovementFlag.BLOCK_MOVEMENT_WEST;
+			}
+			else
+			{
+				direction2 = MovementFlag.BLOCK_MOVEMENT_EAST;
+			}
+
+			if (containsAnyOf(tileBesideFlagsArray, new MovementFlag[]{direction1, direction2}))
+			{
+				return TilemanModeMovement.FILL_AROUND;
+			}
+			return TilemanModeMovement.FILL_BESIDE;
+		}
+		return TilemanModeMovement.FILL_NONE;
+	}
+
+	private static int referenceCornerFill(int xDiff, int yDiff, MovementFlag[] northTile, MovementFlag[] southTile)
+	{
+		if (xDiff + yDiff == 0)
+		{
+			if (containsAnyOf(FULL_BLOCK, northTile)
+				|| containsAnyOf(northTile, new MovementFlag[]{MovementFlag.BLOCK_MOVEMENT_SOUTH, MovementFlag.BLOCK_MOVEMENT_WEST}))
+			{
+				return TilemanModeMovement.FILL_SOUTH;
+			}
+			else if (containsAnyOf(FULL_BLOCK, southTile)
+				|| containsAnyOf(southTile, new MovementFlag[]{MovementFlag.BLOCK_MOVEMENT_NORTH, MovementFlag.BLOCK_MOVEMENT_EAST}))
+			{
+				return TilemanModeMovement.FILL_NORTH;
+			}
+		}
+		else
+		{
+			if (containsAnyOf(FULL_BLOCK, northTile)
+				|| containsAnyOf(northTile, new MovementFlag[]{MovementFlag.BLOCK_MOVEMENT_SOUTH, MovementFlag.BLOCK_MOVEMENT_EAST}))
+			{
+				return TilemanModeMovement.FILL_SOUTH;
+			}
+			else if (containsAnyOf(FULL_BLOCK, southTile)
+				|| containsAnyOf(southTile, new MovementFlag[]{MovementFlag.BLOCK_MOVEMENT_NORTH, MovementFlag.BLOCK_MOVEMENT_WEST}))
+			{
+				return TilemanModeMovement.FILL_NORTH;
+			}
+		}
+		return TilemanModeMovement.FILL_NONE;
+	}
+
+	private static boolean containsAnyOf(MovementFlag[] comparisonFlags, MovementFlag[] flagsToCompare)
+	{
+		if (comparisonFlags.length == 0 || flagsToCompare.length == 0)
+		{
+			return false;
+		}
+		for (MovementFlag flag : flagsToCompare)
+		{
+			if (Arrays.asList(comparisonFlags).contains(flag))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private enum MovementFlag
+	{
+		BLOCK_MOVEMENT_NORTH_WEST(CollisionDataFlag.BLOCK_MOVEMENT_NORTH_WEST),
+		BLOCK_MOVEMENT_NORTH(CollisionDataFlag.BLOCK_MOVEMENT_NORTH),
+		BLOCK_MOVEMENT_NORTH_EAST(CollisionDataFlag.BLOCK_MOVEMENT_NORTH_EAST),
+		BLOCK_MOVEMENT_EAST(CollisionDataFlag.BLOCK_MOVEMENT_EAST),
+		BLOCK_MOVEMENT_SOUTH_EAST(CollisionDataFlag.BLOCK_MOVEMENT_SOUTH_EAST),
+		BLOCK_MOVEMENT_SOUTH(CollisionDataFlag.BLOCK_MOVEMENT_SOUTH),
+		BLOCK_MOVEMENT_SOUTH_WEST(CollisionDataFlag.BLOCK_MOVEMENT_SOUTH_WEST),
+		BLOCK_MOVEMENT_WEST(CollisionDataFlag.BLOCK_MOVEMENT_WEST),
+
+		BLOCK_MOVEMENT_OBJECT(CollisionDataFlag.BLOCK_MOVEMENT_OBJECT),
+		BLOCK_MOVEMENT_FLOOR_DECORATION(CollisionDataFlag.BLOCK_MOVEMENT_FLOOR_DECORATION),
+		BLOCK_MOVEMENT_FLOOR(CollisionDataFlag.BLOCK_MOVEMENT_FLOOR),
+		BLOCK_MOVEMENT_FULL(CollisionDataFlag.BLOCK_MOVEMENT_FULL);
+
+		private final int flag;
+
+		MovementFlag(int flag)
+		{
+			this.flag = flag;
+		}
+
+		static Set<MovementFlag> getSetFlags(int collisionData)
+		{
+			return Arrays.stream(values())
+				.filter(movementFlag -> (movementFlag.flag & collisionData) != 0)
+				.collect(Collectors.toSet());
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package com.tileman;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TilemanModeOutlineTest
+{
+	private static final int SCENE_SIZE = TilemanModeSceneGrid.SCENE_SIZE;
+
+	@Test
+	public void testSingleTileHasFourEdges()
+	{
+		TilemanModeSceneGrid grid = new TilemanModeSceneGrid();
+		TilemanModeOutline outline = new TilemanModeOutline();
+		assertTrue(outline.update(grid, 0));
+		assertFalse(outline.update(grid, 0));
+
+		grid.add(0, 10, 20);
+		assertTrue(outline.update(grid, 0));
+		assertTrue(outline.hasHorizontalEdge(10, 20));
+		assertTrue(outline.hasHorizontalEdge(10, 21));
+		assertTrue(outline.hasVerticalEdge(10, 20));
+		assertTrue(outline.hasVerticalEdge(11, 20));
+
+		// The shared edge between two neighbours is no longer on the border
+		grid.add(0, 11, 20);
+		outline.update(grid, 0);
+		assertFalse(outline.hasVerticalEdge(11, 20));
+		assertTrue(outline.hasVerticalEdge(12, 20));
+	}
+
+	@Test
+	public void testIncrementalUpdatesMatchRescans()
+	{
+		Random random = new Random(1);
+		TilemanModeSceneGrid grid = new TilemanModeSceneGrid();
+		TilemanModeOutline outline = new TilemanModeOutline();
+		outline.update(grid, 1);
+
+		for (int step = 0; step < 200; step++)
+		{
+			// A few changes per update, on every plane and along the scene's edges
+			for (int i = random.nextInt(4); i >= 0; i--)
+			{
+				int plane = random.nextInt(2);
+				int x = random.nextInt(12) == 0 ? SCENE_SIZE - 1 : random.nextInt(16);
+				int y = random.nextInt(12) == 0 ? 0 : random.nextInt(16);
+				if (random.nextBoolean())
+				{
+					grid.add(plane, x, y);
+				}
+				else
+				{
+					grid.remove(plane, x, y);
+				}
+			}
+			outline.update(grid, 1);
+			assertSameEdges(rescan(grid, 1), outline);
+		}
+	}
+
+	@Test
+	public void testChangesToManyTilesRescan()
+	{
+		TilemanModeSceneGrid grid = new TilemanModeSceneGrid();
+		TilemanModeOutline outline = new TilemanModeOutline();
+		outline.update(grid, 0);
+
+		// More single changes than the grid logs
+		for (int i = 0; i < 300; i++)
+		{
+			grid.add(0, i % SCENE_SIZE, i / SCENE_SIZE);
+		}
+		outline.update(grid, 0);
+		assertSameEdges(rescan(grid, 0), outline);
+
+		grid.translate(5, 3);
+		outline.update(grid, 0);
+		assertSameEdges(rescan(grid, 0), outline);
+
+		TilemanModeSceneGrid rebuilt = new TilemanModeSceneGrid();
+		rebuilt.add(0, 50, 50);
+		grid.copyFrom(rebuilt);
+		grid.add(0, 51, 50);
+		outline.update(grid, 0);
+		assertSameEdges(rescan(grid, 0), outline);
+
+		grid.clear();
+		outline.update(grid, 0);
+		assertSameEdges(rescan(grid, 0), outline);
+	}
+
+	private static TilemanModeOutline rescan(TilemanModeSceneGrid grid, int plane)
+	{
+		TilemanModeOutline outline = new TilemanModeOutline();
+		outline.update(grid, plane);
+		return outline;
+	}
+
+	private static void assertSameEdges(TilemanModeOutline expected, TilemanModeOutline actual)
+	{
+		for (int line = 0; line <= SCENE_SIZE; line++)
+		{
+			for (int i = 0; i < SCENE_SIZE; i++)
+			{
+				assertEquals(expected.hasHorizontalEdge(i, line), actual.hasHorizontalEdge(i, line));
+				assertEquals(expected.hasVerticalEdge(line, i), actual.hasVerticalEdge(line, i));
+			}
+		}
+	}
+}
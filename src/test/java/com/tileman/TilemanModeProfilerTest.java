@@ -0,0 +1,74 @@
+package com.tileman;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TilemanModeProfilerTest
+{
+	private static final TilemanModeProfiler.Section SECTION = TilemanModeProfiler.Section.LOAD_POINTS;
+
+	@Test
+	public void testNothingIsRecordedWhileDisabled()
+	{
+		TilemanModeProfiler profiler = new TilemanModeProfiler();
+		long start = profiler.start(SECTION);
+		assertEquals(0, start);
+		profiler.stop(SECTION, start);
+		assertEquals(0, profiler.getStats(SECTION).getCalls());
+	}
+
+	@Test
+	public void testPercentilesAreOrdered()
+	{
+		TilemanModeProfiler profiler = new TilemanModeProfiler();
+		profiler.setEnabled(true);
+		long blackhole = 0;
+		for (int i = 0; i < 1000; i++)
+		{
+			long start = profiler.start(SECTION);
+			// Every hundredth call is much slower than the rest
+			for (int j = 0; j < (i % 100 == 0 ? 100_000 : 100); j++)
+			{
+				blackhole += j * (long) i;
+			}
+			profiler.stop(SECTION, start);
+		}
+
+		TilemanModeProfiler.Stats stats = profiler.getStats(SECTION);
+		assertEquals(1000, stats.getCalls());
+		assertTrue(stats.getP50Nanos() <= stats.getP99Nanos());
+		assertTrue(stats.getP99Nanos() <= stats.getMaxNanos());
+		assertTrue(stats.getMaxNanos() > 0);
+		assertTrue(blackhole != 1);
+	}
+
+	@Test
+	public void testAllocationsAreCounted()
+	{
+		TilemanModeProfiler profiler = new TilemanModeProfiler();
+		profiler.setEnabled(true);
+		long start = profiler.start(SECTION);
+		byte[] allocated = new byte[1 << 20];
+		profiler.stop(SECTION, start);
+
+		long allocatedBytes = profiler.getStats(SECTION).getAllocatedBytes();
+		if (allocatedBytes >= 0)
+		{
+			// Only HotSpot counts allocations
+			assertTrue(allocatedBytes >= allocated.length);
+		}
+	}
+
+	@Test
+	public void testEnablingDropsOldStats()
+	{
+		TilemanModeProfiler profiler = new TilemanModeProfiler();
+		profiler.setEnabled(true);
+		profiler.stop(SECTION, profiler.start(SECTION));
+		profiler.setEnabled(false);
+		profiler.setEnabled(true);
+		assertEquals(0, profiler.getStats(SECTION).getCalls());
+	}
+}
@@ -0,0 +1,173 @@
+package com.tileman;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TilemanModeRegionCodecTest
+{
+	private static final int REGION_ID = 12850;
+	private static final int PLANE_TILES = TilemanModeRegion.REGION_SIZE * TilemanModeRegion.REGION_SIZE;
+	// Plane mask byte and encoding byte, then the raw bitmap
+	private static final int BITMAP_PLANE_BYTES = 2 + TilemanModeRegion.REGION_SIZE * Long.BYTES;
+
+	@Test
+	public void testSparseRoundTrip()
+	{
+		TilemanModeRegion region = new TilemanModeRegion(REGION_ID);
+		Random random = new Random(1);
+		for (int i = 0; i < 200; i++)
+		{
+			region.add(random.nextInt(64), random.nextInt(64), 0);
+		}
+		region.add(63, 63, 1);
+
+		byte[] encoded = TilemanModeRegionCodec.encodeBytes(region);
+		assertTrue(encoded.length < BITMAP_PLANE_BYTES);
+		assertSameTiles(region, TilemanModeRegionCodec.decodeBytes(REGION_ID, ByteBuffer.wrap(encoded)));
+		assertSameTiles(region, TilemanModeRegionCodec.decode(REGION_ID, TilemanModeRegionCodec.encode(region)));
+	}
+
+	@Test
+	public void testBitmapRoundTrip()
+	{
+		TilemanModeRegion region = new TilemanModeRegion(REGION_ID);
+		for (int y = 0; y < TilemanModeRegion.REGION_SIZE; y++)
+		{
+			region.addRow(y, 2, -1L);
+		}
+
+		byte[] encoded = TilemanModeRegionCodec.encodeBytes(region);
+		assertEquals(BITMAP_PLANE_BYTES, encoded.length);
+		TilemanModeRegion decoded = TilemanModeRegionCodec.decodeBytes(REGION_ID, ByteBuffer.wrap(encoded));
+		assertEquals(PLANE_TILES, decoded.size(2));
+		assertSameTiles(region, decoded);
+	}
+
+	@Test
+	public void testSparseAndBitmapBoundary()
+	{
+		// Consecutive tiles take a byte each after a two byte count, so 509 is the last that beats the bitmap
+		for (int tiles = 505; tiles <= 515; tiles++)
+		{
+			TilemanModeRegion region = new TilemanModeRegion(REGION_ID);
+			for (int index = 0; index < tiles; index++)
+			{
+				region.add(index & 63, index >> 6, 0);
+			}
+
+			byte[] encoded = TilemanModeRegionCodec.encodeBytes(region);
+			if (tiles <= 509)
+			{
+				assertEquals(2 + 2 + tiles, encoded.length);
+			}
+			else
+			{
+				assertEquals(BITMAP_PLANE_BYTES, encoded.length);
+			}
+			assertSameTiles(region, TilemanModeRegionCodec.decodeBytes(REGION_ID, ByteBuffer.wrap(encoded)));
+		}
+	}
+
+	@Test
+	public void testEmptyRegion()
+	{
+		TilemanModeRegion region = new TilemanModeRegion(REGION_ID);
+		byte[] encoded = TilemanModeRegionCodec.encodeBytes(region);
+		assertEquals(1, encoded.length);
+		assertTrue(TilemanModeRegionCodec.decodeBytes(REGION_ID, ByteBuffer.wrap(encoded)).isEmpty());
+		assertTrue(TilemanModeRegionCodec.decode(REGION_ID, null).isEmpty());
+		assertTrue(TilemanModeRegionCodec.decode(REGION_ID, "").isEmpty());
+	}
+
+	@Test
+	public void testUpperPlanesOnly()
+	{
+		TilemanModeRegion region = new TilemanModeRegion(REGION_ID);
+		region.add(0, 0, 3);
+		region.add(5, 7, 3);
+
+		byte[] encoded = TilemanModeRegionCodec.encodeBytes(region);
+		assertEquals(1 << 3, encoded[0]);
+		TilemanModeRegion decoded = TilemanModeRegionCodec.decodeBytes(REGION_ID, ByteBuffer.wrap(encoded));
+		assertEquals(0, decoded.size(0));
+		assertSameTiles(region, decoded);
+	}
+
+	@Test
+	public void testLegacyJson()
+	{
+		String json = "[{\"regionId\":12850,\"regionX\":1,\"regionY\":2,\"z\":0},"
+			+ "{\"regionId\":12850,\"regionX\":63,\"regionY\":0,\"z\":1},"
+			+ "{\"regionId\":12850,\"regionX\":1,\"regionY\":2,\"z\":0}]";
+		assertTrue(TilemanModeRegionCodec.isLegacy(json));
+
+		TilemanModeRegion region = TilemanModeRegionCodec.decode(REGION_ID, json);
+		assertEquals(2, region.size());
+		assertTrue(region.contains(1, 2, 0));
+		assertTrue(region.contains(63, 0, 1));
+
+		// Upgraded on the next write, and read back the same from the compact form
+		String upgraded = TilemanModeRegionCodec.encode(region);
+		assertFalse(TilemanModeRegionCodec.isLegacy(upgraded));
+		assertSameTiles(region, TilemanModeRegionCodec.decode(REGION_ID, upgraded));
+	}
+
+	@Test
+	public void testMalformedRegionsAreRejected()
+	{
+		// A plane no region has
+		assertMalformed(new byte[]{(byte) 0x10});
+		// An unknown plane encoding
+		assertMalformed(new byte[]{1, 7});
+		// A varint running past five bytes
+		assertMalformed(new byte[]{1, 1, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0});
+		// Truncated in the middle of the tiles, and of a bitmap
+		assertMalformed(new byte[]{1, 1, 3, 0, 0});
+		assertMalformed(new byte[]{1, 0, 0, 0, 0, 0});
+		// A gap past the end of the plane, which would otherwise spill onto the next one
+		assertMalformed(new byte[]{1, 1, 1, (byte) 0x80, (byte) 0x20});
+
+		try
+		{
+			TilemanModeRegionCodec.decode(REGION_ID, TilemanModeRegionCodec.PREFIX + Base64.getEncoder().encodeToString(new byte[]{1, 1, 2, 0}));
+			fail();
+		}
+		catch (IllegalArgumentException e)
+		{
+			// Expected
+		}
+	}
+
+	private static void assertMalformed(byte[] encoded)
+	{
+		try
+		{
+			TilemanModeRegionCodec.decodeBytes(REGION_ID, ByteBuffer.wrap(encoded));
+			fail();
+		}
+		catch (IllegalArgumentException e)
+		{
+			// Expected
+		}
+	}
+
+	private static void assertSameTiles(TilemanModeRegion expected, TilemanModeRegion actual)
+	{
+		assertEquals(expected.size(), actual.size());
+		for (int plane = 0; plane < TilemanModeRegion.PLANES; plane++)
+		{
+			for (int y = 0; y < TilemanModeRegion.REGION_SIZE; y++)
+			{
+				assertEquals(expected.getRow(y, plane), actual.getRow(y, plane));
+			}
+		}
+	}
+}
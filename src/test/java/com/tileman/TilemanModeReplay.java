@@ -0,0 +1,260 @@
+package com.tileman;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import net.runelite.api.Client;
+import net.runelite.api.CollisionData;
+import net.runelite.api.Constants;
+import net.runelite.api.Player;
+import net.runelite.api.coords.LocalPoint;
+import net.runelite.api.coords.WorldPoint;
+import net.runelite.api.events.GameTick;
+import net.runelite.client.config.ConfigManager;
+import net.runelite.client.ui.ClientToolbar;
+import net.runelite.client.ui.overlay.OverlayManager;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Replays a recorded trace of player positions through the plugin, one game tick per position, against a client
+ * whose collision maps hold the trace's flags, and compares what got marked with the tiles the player really walked.
+ * The client, config and config manager are stub-only mocks, like in the benchmarks, so the real auto-marking and
+ * {@link TilemanModePlugin#updateTileMark} run unchanged.
+ *
+ * Traces are plain text, one record per line:
+ * <pre>
+ * flags &lt;plane&gt; &lt;sceneX&gt; &lt;sceneY&gt; &lt;hex collision flags&gt;   non-zero collision flags
+ * truth &lt;plane&gt; &lt;sceneX&gt; &lt;sceneY&gt;                       a tile the player really walked on
+ * pos &lt;plane&gt; &lt;sceneX&gt; &lt;sceneY&gt;                         the position seen on a game tick
+ * </pre>
+ */
+class TilemanModeReplay
+{
+	private static final int SCENE_SIZE = TilemanModeSceneGrid.SCENE_SIZE;
+	// Scene origin in the world, away from Tutorial Island where nothing is marked
+	private static final int BASE_X = 3200;
+	private static final int BASE_Y = 3200;
+
+	static class Trace
+	{
+		final TilemanModeCollisionMap collisionMap = new TilemanModeCollisionMap();
+		final List<int[]> positions = new ArrayList<>();
+		final BitSet groundTruth = new BitSet();
+
+		Trace()
+		{
+			// A fresh snapshot starts dirty until taken from a client; traces fill it in by hand
+			collisionMap.snapshot(null);
+		}
+
+		void addPosition(int plane, int sceneX, int sceneY)
+		{
+			positions.add(new int[]{plane, sceneX, sceneY});
+		}
+
+		void addGroundTruth(int plane, int sceneX, int sceneY)
+		{
+			groundTruth.set(index(plane, sceneX, sceneY));
+		}
+	}
+
+	static class Result
+	{
+		int steps;
+		int tilesMarked;
+		int missedTiles;
+		int extraTiles;
+		// The plugin's own count of unlocked tiles, and the store's
+		int totalTiles;
+		int storedTiles;
+		long elapsedNanos;
+
+		double getStepsPerSecond()
+		{
+			return elapsedNanos == 0 ? 0 : steps * 1_000_000_000d / elapsedNanos;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("%d steps, %d tiles marked, %d missed, %d extra, %d counted, %d stored, %.0f steps/s",
+				steps, tilesMarked, missedTiles, extraTiles, totalTiles, storedTiles, getStepsPerSecond());
+		}
+	}
+
+	static Result replay(Trace trace)
+	{
+		// Where the player stands, as plane, sceneX and sceneY, read by the client mock
+		final int[] position = new int[3];
+		final TilemanModePlugin plugin = createPlugin(trace, position);
+
+		final Result result = new Result();
+		final GameTick tick = new GameTick();
+		final long start = System.nanoTime();
+		for (int[] next : trace.positions)
+		{
+			System.arraycopy(next, 0, position, 0, position.length);
+			plugin.onGameTick(tick);
+			result.steps++;
+		}
+		result.elapsedNanos = System.nanoTime() - start;
+
+		final TilemanModeSceneGrid sceneGrid = plugin.getSceneGrid();
+		final BitSet marked = new BitSet();
+		for (int plane = 0; plane < Constants.MAX_Z; plane++)
+		{
+			for (int x = 0; x < SCENE_SIZE; x++)
+			{
+				for (int y = 0; y < SCENE_SIZE; y++)
+				{
+					if (sceneGrid.contains(plane, x, y))
+					{
+						marked.set(index(plane, x, y));
+					}
+				}
+			}
+		}
+		result.tilesMarked = marked.cardinality();
+		result.totalTiles = plugin.getTotalTiles();
+		result.storedTiles = plugin.getTileStore().countTiles();
+		BitSet missed = (BitSet) trace.groundTruth.clone();
+		missed.andNot(marked);
+		result.missedTiles = missed.cardinality();
+		BitSet extra = (BitSet) marked.clone();
+		extra.andNot(trace.groundTruth);
+		result.extraTiles = extra.cardinality();
+		return result;
+	}
+
+	/**
+	 * @return a logged in plugin auto-marking every tile walked, with no tile budget, whose player stands wherever
+	 * {@code position} says.
+	 */
+	private static TilemanModePlugin createPlugin(Trace trace, int[] position)
+	{
+		final Client client = mock(Client.class, withSettings().stubOnly());
+		when(client.getBaseX()).thenReturn(BASE_X);
+		when(client.getBaseY()).thenReturn(BASE_Y);
+		when(client.getPlane()).thenAnswer(invocation -> position[0]);
+
+		final Player player = mock(Player.class, withSettings().stubOnly());
+		when(player.getWorldLocation()).thenAnswer(invocation -> new WorldPoint(BASE_X + position[1], BASE_Y + position[2], position[0]));
+		when(player.getLocalLocation()).thenAnswer(invocation -> LocalPoint.fromScene(position[1], position[2]));
+		when(client.getLocalPlayer()).thenReturn(player);
+
+		final CollisionData[] collisionMaps = new CollisionData[Constants.MAX_Z];
+		for (int plane = 0; plane < collisionMaps.length; plane++)
+		{
+			final int[][] flags = new int[SCENE_SIZE][SCENE_SIZE];
+			for (int x = 0; x < SCENE_SIZE; x++)
+			{
+				for (int y = 0; y < SCENE_SIZE; y++)
+				{
+					flags[x][y] = trace.collisionMap.getFlags(plane, x, y);
+				}
+			}
+			collisionMaps[plane] = mock(CollisionData.class, withSettings().stubOnly());
+			when(collisionMaps[plane].getFlags()).thenReturn(flags);
+		}
+		when(client.getCollisionMaps()).thenReturn(collisionMaps);
+
+		final TilemanModeConfig config = mock(TilemanModeConfig.class, withSettings().stubOnly());
+		when(config.automarkTiles()).thenReturn(true);
+		when(config.allowTileDeficit()).thenReturn(true);
+		when(config.expPerTile()).thenReturn(1000);
+
+		// Binding the plugin as an instance injects its members
+		final TilemanModePlugin plugin = new TilemanModePlugin();
+		Guice.createInjector(new AbstractModule()
+		{
+			@Override
+			protected void configure()
+			{
+				bind(Client.class).toInstance(client);
+				bind(ConfigManager.class).toInstance(mock(ConfigManager.class, withSettings().stubOnly()));
+				bind(TilemanModeConfig.class).toInstance(config);
+				bind(OverlayManager.class).toInstance(mock(OverlayManager.class, withSettings().stubOnly()));
+				bind(ClientToolbar.class).toInstance(mock(ClientToolbar.class, withSettings().stubOnly()));
+				bind(TilemanModePlugin.class).toInstance(plugin);
+			}
+		});
+		return plugin;
+	}
+
+	static Trace read(BufferedReader reader) throws IOException
+	{
+		final Trace trace = new Trace();
+		String line;
+		while ((line = reader.readLine()) != null)
+		{
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#"))
+			{
+				continue;
+			}
+
+			final String[] parts = line.split("\\s+");
+			final int plane = Integer.parseInt(parts[1]);
+			final int x = Integer.parseInt(parts[2]);
+			final int y = Integer.parseInt(parts[3]);
+			switch (parts[0])
+			{
+				case "flags":
+					trace.collisionMap.setFlags(plane, x, y, Integer.parseInt(parts[4], 16));
+					break;
+				case "truth":
+					trace.addGroundTruth(plane, x, y);
+					break;
+				case "pos":
+					trace.addPosition(plane, x, y);
+					break;
+				default:
+					throw new IOException("Unknown trace record: " + line);
+			}
+		}
+		return trace;
+	}
+
+	static void write(Trace trace, Writer writer)
+	{
+		final PrintWriter out = new PrintWriter(writer);
+		for (int plane = 0; plane < Constants.MAX_Z; plane++)
+		{
+			for (int x = 0; x < SCENE_SIZE; x++)
+			{
+				for (int y = 0; y < SCENE_SIZE; y++)
+				{
+					final int flags = trace.collisionMap.getFlags(plane, x, y);
+					if (flags != 0)
+					{
+						out.printf("flags %d %d %d %x%n", plane, x, y, flags);
+					}
+				}
+			}
+		}
+		for (int i = trace.groundTruth.nextSetBit(0); i >= 0; i = trace.groundTruth.nextSetBit(i + 1))
+		{
+			out.printf("truth %d %d %d%n", i / (SCENE_SIZE * SCENE_SIZE), i % SCENE_SIZE, (i / SCENE_SIZE) % SCENE_SIZE);
+		}
+		for (int[] position : trace.positions)
+		{
+			out.printf("pos %d %d %d%n", position[0], position[1], position[2]);
+		}
+		out.flush();
+	}
+
+	private static int index(int plane, int sceneX, int sceneY)
+	{
+		return (plane * SCENE_SIZE + sceneY) * SCENE_SIZE + sceneX;
+	}
+}
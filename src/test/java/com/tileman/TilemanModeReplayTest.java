@@ -0,0 +1,185 @@
+package com.tileman;
+
+import net.runelite.api.CollisionDataFlag;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Replays synthetic walks through the plugin and checks every tile walked gets marked and counted, even when
+ * positions are only seen every few tiles.
+ */
+public class TilemanModeReplayTest
+{
+	private static final Logger log = LoggerFactory.getLogger(TilemanModeReplayTest.class);
+
+	private static final int PLANE = 0;
+	private static final int WALL = CollisionDataFlag.BLOCK_MOVEMENT_FULL;
+
+	@Test
+	public void testOpenFieldRunMarksEveryTile()
+	{
+		// Running covers two tiles a tick: 20 east, 10 north east, then 10 north
+		List<int[]> route = new ArrayList<>();
+		int x = 20;
+		int y = 20;
+		route.add(new int[]{x, y});
+		for (int i = 0; i < 20; i++)
+		{
+			route.add(new int[]{++x, y});
+		}
+		for (int i = 0; i < 10; i++)
+		{
+			route.add(new int[]{++x, ++y});
+		}
+		for (int i = 0; i < 10; i++)
+		{
+			route.add(new int[]{x, ++y});
+		}
+
+		TilemanModeReplay.Result result = TilemanModeReplay.replay(sampledTrace(new TilemanModeReplay.Trace(), route, 2));
+		log.debug("Open field: {}", result);
+		assertEquals(route.size(), result.tilesMarked);
+		assertEquals(0, result.missedTiles);
+		assertEquals(0, result.extraTiles);
+		assertEquals(route.size(), result.totalTiles);
+		assertEquals(route.size(), result.storedTiles);
+	}
+
+	@Test
+	public void testLaggedCorridorMarksEveryTile()
+	{
+		// Positions only seen every 8 tiles, as when several ticks are skipped
+		TilemanModeReplay.Result result = TilemanModeReplay.replay(serpentineTrace(8));
+		log.debug("Lagged corridor: {}", result);
+		assertEquals(0, result.missedTiles);
+		assertEquals(0, result.extraTiles);
+		assertEquals(result.tilesMarked, result.totalTiles);
+	}
+
+	@Test
+	public void testTraceRoundTrip() throws IOException
+	{
+		TilemanModeReplay.Trace trace = serpentineTrace(8);
+		StringWriter written = new StringWriter();
+		TilemanModeReplay.write(trace, written);
+
+		TilemanModeReplay.Trace read = TilemanModeReplay.read(new BufferedReader(new StringReader(written.toString())));
+		assertEquals(trace.groundTruth, read.groundTruth);
+		assertEquals(trace.positions.size(), read.positions.size());
+		for (int i = 0; i < trace.positions.size(); i++)
+		{
+			assertArrayEquals(trace.positions.get(i), read.positions.get(i));
+		}
+		for (int x = 0; x < TilemanModeSceneGrid.SCENE_SIZE; x++)
+		{
+			for (int y = 0; y < TilemanModeSceneGrid.SCENE_SIZE; y++)
+			{
+				assertEquals(trace.collisionMap.getFlags(PLANE, x, y), read.collisionMap.getFlags(PLANE, x, y));
+			}
+		}
+
+		StringWriter rewritten = new StringWriter();
+		TilemanModeReplay.write(read, rewritten);
+		assertEquals(written.toString(), rewritten.toString());
+	}
+
+	@Test
+	public void testLongReplayKeepsCountsInStep()
+	{
+		TilemanModeReplay.Trace trace = serpentineTrace(8);
+		List<int[]> positions = new ArrayList<>(trace.positions);
+		// Walk the corridor back and forth so every step of the replay has to fill a gap
+		for (int lap = 0; lap < 500; lap++)
+		{
+			for (int i = positions.size() - 2; i >= 0; i--)
+			{
+				trace.positions.add(positions.get(i));
+			}
+			for (int i = 1; i < positions.size(); i++)
+			{
+				trace.positions.add(positions.get(i));
+			}
+		}
+
+		TilemanModeReplay.Result result = TilemanModeReplay.replay(trace);
+		log.info("Long replay: {}", result);
+		assertEquals(trace.positions.size(), result.steps);
+		assertEquals(0, result.missedTiles);
+		assertEquals(0, result.extraTiles);
+		// Walking over tiles already marked must not count them again
+		assertEquals(trace.groundTruth.cardinality(), result.tilesMarked);
+		assertEquals(result.tilesMarked, result.totalTiles);
+		assertEquals(result.tilesMarked, result.storedTiles);
+	}
+
+	/**
+	 * A one tile wide corridor snaking east and west through solid wall, with three tile thick walls between
+	 * its rows so no two positions a few tiles apart along it are close enough to look like a short move.
+	 */
+	private static TilemanModeReplay.Trace serpentineTrace(int sampleEvery)
+	{
+		final int minX = 10;
+		final int maxX = 40;
+		final int minY = 10;
+		final int rows = 6;
+		final int rowSpacing = 4;
+
+		List<int[]> route = new ArrayList<>();
+		for (int row = 0; row < rows; row++)
+		{
+			int y = minY + row * rowSpacing;
+			boolean east = row % 2 == 0;
+			for (int i = 0; i <= maxX - minX; i++)
+			{
+				route.add(new int[]{east ? minX + i : maxX - i, y});
+			}
+			if (row < rows - 1)
+			{
+				for (int i = 1; i < rowSpacing; i++)
+				{
+					route.add(new int[]{east ? maxX : minX, y + i});
+				}
+			}
+		}
+
+		TilemanModeReplay.Trace trace = new TilemanModeReplay.Trace();
+		int maxY = minY + (rows - 1) * rowSpacing;
+		for (int x = minX - 1; x <= maxX + 1; x++)
+		{
+			for (int y = minY - 1; y <= maxY + 1; y++)
+			{
+				trace.collisionMap.setFlags(PLANE, x, y, WALL);
+			}
+		}
+		for (int[] tile : route)
+		{
+			trace.collisionMap.setFlags(PLANE, tile[0], tile[1], 0);
+		}
+		return sampledTrace(trace, route, sampleEvery);
+	}
+
+	private static TilemanModeReplay.Trace sampledTrace(TilemanModeReplay.Trace trace, List<int[]> route, int sampleEvery)
+	{
+		for (int i = 0; i < route.size(); i++)
+		{
+			int[] tile = route.get(i);
+			trace.addGroundTruth(PLANE, tile[0], tile[1]);
+			if (i % sampleEvery == 0 || i == route.size() - 1)
+			{
+				trace.addPosition(PLANE, tile[0], tile[1]);
+			}
+		}
+		return trace;
+	}
+}
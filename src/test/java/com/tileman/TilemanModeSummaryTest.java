@@ -0,0 +1,64 @@
+package com.tileman;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class TilemanModeSummaryTest
+{
+	@Test
+	public void testRoundTrip()
+	{
+		TilemanModeSummary summary = new TilemanModeSummary();
+		summary.put(12850, region(12850, 3, 0));
+		summary.put(12851, region(12851, 200, 2));
+		// Regions that can't be decoded are kept with no tiles, so their keys still match
+		summary.put(65535, null);
+
+		TilemanModeSummary decoded = TilemanModeSummary.decode(summary.encode());
+		assertNotNull(decoded);
+		assertEquals(203, decoded.getTotal());
+		assertEquals(new HashSet<>(Arrays.asList(12850, 12851, 65535)), decoded.getRegionIds());
+	}
+
+	@Test
+	public void testTotalFollowsChanges()
+	{
+		TilemanModeSummary summary = new TilemanModeSummary();
+		summary.put(12850, region(12850, 10, 0));
+		summary.put(12850, region(12850, 4, 1));
+		summary.put(12851, region(12851, 5, 3));
+		assertEquals(9, summary.getTotal());
+
+		summary.remove(12850);
+		assertEquals(5, summary.getTotal());
+		summary.clear();
+		assertEquals(0, summary.getTotal());
+	}
+
+	@Test
+	public void testUnreadableSummariesAreIgnored()
+	{
+		assertNull(TilemanModeSummary.decode(null));
+		assertNull(TilemanModeSummary.decode("[{\"regionId\":12850}]"));
+		// Another format version
+		assertNull(TilemanModeSummary.decode("b64:AgA="));
+		// Truncated before the total
+		assertNull(TilemanModeSummary.decode("b64:AQE="));
+	}
+
+	private static TilemanModeRegion region(int regionId, int tiles, int plane)
+	{
+		TilemanModeRegion region = new TilemanModeRegion(regionId);
+		for (int i = 0; i < tiles; i++)
+		{
+			region.add(i % TilemanModeRegion.REGION_SIZE, i / TilemanModeRegion.REGION_SIZE, plane);
+		}
+		return region;
+	}
+}
@@ -0,0 +1,150 @@
+package com.tileman;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TilemanModeTileFileTest
+{
+	private static final Logger log = LoggerFactory.getLogger(TilemanModeTileFileTest.class);
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		TilemanModeTileStore exported = randomStore(100_000, 1);
+		Path path = folder.getRoot().toPath().resolve("tileman.tiles");
+
+		long start = System.nanoTime();
+		assertEquals(100_000, TilemanModeTileFile.write(exported, path));
+		long written = System.nanoTime();
+		TilemanModeTileStore imported = new TilemanModeTileStore(null);
+		assertEquals(100_000, TilemanModeTileFile.read(path, imported));
+		long read = System.nanoTime();
+		log.info("Round tripped 100000 tiles in {} bytes: write {} ms, read {} ms", path.toFile().length(),
+			(written - start) / 1_000_000, (read - written) / 1_000_000);
+
+		assertSameTiles(exported, imported);
+		assertFalse(path.resolveSibling("tileman.tiles.tmp").toFile().exists());
+	}
+
+	@Test
+	public void testImportMergesIntoExistingTiles() throws IOException
+	{
+		TilemanModeTileStore file = randomStore(5_000, 2);
+		TilemanModeTileStore existing = randomStore(5_000, 3);
+		Path path = folder.getRoot().toPath().resolve("tileman.tiles");
+		TilemanModeTileFile.write(file, path);
+
+		int before = existing.countTiles();
+		int imported = TilemanModeTileFile.read(path, existing);
+		assertEquals(before + imported, existing.countTiles());
+		for (int regionId : file.getRegionIds())
+		{
+			for (TilemanModeTile tile : file.getTiles(regionId))
+			{
+				assertTrue(existing.contains(tile));
+			}
+		}
+
+		// Nothing is new the second time round
+		assertEquals(0, TilemanModeTileFile.read(path, existing));
+	}
+
+	@Test(expected = EOFException.class)
+	public void testTruncatedFileIsRejected() throws IOException
+	{
+		Path path = folder.getRoot().toPath().resolve("tileman.tiles");
+		TilemanModeTileFile.write(randomStore(5_000, 4), path);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE))
+		{
+			channel.truncate(channel.size() - 6);
+		}
+		TilemanModeTileFile.read(path, new TilemanModeTileStore(null));
+	}
+
+	@Test
+	public void testTruncatedFileImportsNothing() throws IOException
+	{
+		Path path = folder.getRoot().toPath().resolve("tileman.tiles");
+		TilemanModeTileFile.write(randomStore(5_000, 5), path);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE))
+		{
+			// Cut into the last region, after every other one has been read
+			channel.truncate(channel.size() - 20);
+		}
+
+		TilemanModeTileStore existing = randomStore(100, 6);
+		try
+		{
+			TilemanModeTileFile.read(path, existing);
+			fail();
+		}
+		catch (EOFException e)
+		{
+			assertEquals(100, existing.countTiles());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testOtherFilesAreRejected() throws IOException
+	{
+		Path path = folder.newFile("settings.properties").toPath();
+		Files.write(path, "tilemanMode.region_12850=b64:AA==\n".getBytes());
+		TilemanModeTileFile.read(path, new TilemanModeTileStore(null));
+	}
+
+	private static TilemanModeTileStore randomStore(int tileCount, long seed)
+	{
+		// A store that is only ever read and written through files never touches the config
+		TilemanModeTileStore store = new TilemanModeTileStore(null);
+		Random random = new Random(seed);
+		int added = 0;
+		while (added < tileCount)
+		{
+			TilemanModeTile tile = new TilemanModeTile((48 + random.nextInt(8)) << 8 | (48 + random.nextInt(8)),
+				random.nextInt(64), random.nextInt(64), random.nextInt(10) == 0 ? 1 : 0);
+			if (store.addTile(tile))
+			{
+				added++;
+			}
+		}
+		return store;
+	}
+
+	private static void assertSameTiles(TilemanModeTileStore expected, TilemanModeTileStore actual)
+	{
+		assertEquals(expected.countTiles(), actual.countTiles());
+		for (int regionId : expected.getRegionIds())
+		{
+			long[] expectedRows = new long[TilemanModeRegion.REGION_SIZE];
+			long[] actualRows = new long[TilemanModeRegion.REGION_SIZE];
+			for (int plane = 0; plane < TilemanModeRegion.PLANES; plane++)
+			{
+				expected.copyPlane(regionId, plane, expectedRows);
+				actual.copyPlane(regionId, plane, actualRows);
+				for (int y = 0; y < TilemanModeRegion.REGION_SIZE; y++)
+				{
+					assertEquals(expectedRows[y], actualRows[y]);
+				}
+			}
+		}
+	}
+}